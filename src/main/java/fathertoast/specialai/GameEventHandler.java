@@ -2,16 +2,25 @@ package fathertoast.specialai;
 
 
 import fathertoast.specialai.ai.AIManager;
+import fathertoast.specialai.command.SpecialAICommand;
+import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.event.TagsUpdatedEvent;
 import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.EntityEvent;
 import net.minecraftforge.event.entity.EntityJoinWorldEvent;
+import net.minecraftforge.event.entity.EntityLeaveWorldEvent;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
 import net.minecraftforge.event.entity.player.PlayerContainerEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent;
 import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.event.world.ChunkDataEvent;
+import net.minecraftforge.event.world.ChunkEvent;
 import net.minecraftforge.event.world.ExplosionEvent;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
+import net.minecraftforge.fml.event.server.FMLServerStoppingEvent;
 
 /**
  * Contains and automatically registers all needed forge events.
@@ -30,6 +39,16 @@ public final class GameEventHandler {
     @SubscribeEvent( priority = EventPriority.NORMAL )
     public static void onServerTick( TickEvent.ServerTickEvent event ) { AIManager.onServerTick( event ); }
     
+    /**
+     * Called for each world at the start and end of each tick.
+     * <p>
+     * It is usually wise to check the phase (start/end) before doing anything.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onWorldTick( TickEvent.WorldTickEvent event ) { AIManager.onWorldTick( event ); }
+    
     /**
      * Called when any entity is spawned in the world, including by chunk loading and dimension transition.
      *
@@ -38,6 +57,94 @@ public final class GameEventHandler {
     @SubscribeEvent( priority = EventPriority.LOW )
     public static void onJoinWorld( EntityJoinWorldEvent event ) { AIManager.onJoinWorld( event ); }
     
+    /**
+     * Called after every other handler when any entity is spawned in the world, even if the spawn was canceled.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.LOWEST, receiveCanceled = true )
+    public static void onJoinWorldFinal( EntityJoinWorldEvent event ) { AIManager.onJoinWorldFinal( event ); }
+    
+    /**
+     * Called when any entity is removed from the world, including by chunk unloading and dimension transition.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onLeaveWorld( EntityLeaveWorldEvent event ) { AIManager.onLeaveWorld( event ); }
+    
+    /**
+     * Called when any entity moves into a different chunk.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onEnteringChunk( EntityEvent.EnteringChunk event ) { AIManager.onEnteringChunk( event ); }
+    
+    /**
+     * Called when tags are reloaded, such as by the "/reload" command.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onTagsUpdated( TagsUpdatedEvent event ) { AIManager.onTagsUpdated( event ); }
+    
+    /**
+     * Called when the server registers its commands.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onRegisterCommands( RegisterCommandsEvent event ) { SpecialAICommand.register( event.getDispatcher() ); }
+    
+    /**
+     * Called when the server begins shutting down.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onServerStopping( FMLServerStoppingEvent event ) { AIManager.onServerStopping( event ); }
+    
+    /**
+     * Called when a world is unloaded.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onWorldUnload( WorldEvent.Unload event ) { AIManager.onWorldUnload( event ); }
+    
+    /**
+     * Called when a chunk's data is read from disk, before the chunk is added to the world.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onChunkDataLoad( ChunkDataEvent.Load event ) { AIManager.onChunkDataLoad( event ); }
+    
+    /**
+     * Called when a chunk's data is written to disk.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onChunkDataSave( ChunkDataEvent.Save event ) { AIManager.onChunkDataSave( event ); }
+    
+    /**
+     * Called when a chunk is unloaded.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onChunkUnload( ChunkEvent.Unload event ) { AIManager.onChunkUnload( event ); }
+    
+    /**
+     * Called when a block changes and notifies its neighbors.
+     *
+     * @param event The event data.
+     */
+    @SubscribeEvent( priority = EventPriority.NORMAL )
+    public static void onNeighborNotify( BlockEvent.NeighborNotifyEvent event ) { AIManager.onNeighborNotify( event ); }
+    
     /**
      * Called when a living entity dies for any reason.
      *
@@ -1,17 +1,24 @@
 package fathertoast.specialai.ai;
 
 
-import fathertoast.crust.api.config.common.ConfigUtil;
 import fathertoast.crust.api.lib.EnvironmentHelper;
 import fathertoast.crust.api.lib.NBTHelper;
 import fathertoast.specialai.SpecialAI;
 import fathertoast.specialai.ai.elite.EliteAIHelper;
+import fathertoast.specialai.ai.elite.EliteAIType;
 import fathertoast.specialai.ai.griefing.EatBreedingItemGoal;
 import fathertoast.specialai.ai.griefing.IdleActionsGoal;
+import fathertoast.specialai.ai.griefing.IdleScanScheduler;
+import fathertoast.specialai.ai.griefing.IdleScanWorkers;
+import fathertoast.specialai.ai.griefing.IdleStats;
+import fathertoast.specialai.ai.griefing.IdleTargetIndex;
+import fathertoast.specialai.ai.griefing.IdleTargetTables;
 import fathertoast.specialai.ai.griefing.SpecialBreakDoorGoal;
 import fathertoast.specialai.config.Config;
-import fathertoast.specialai.config.EliteAIConfig;
+import fathertoast.specialai.util.BlockDamageBroadcaster;
 import fathertoast.specialai.util.BlockHelper;
+import fathertoast.specialai.util.HiddenMobIndex;
+import fathertoast.specialai.util.PerWorld;
 import net.minecraft.entity.CreatureEntity;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.LivingEntity;
@@ -28,18 +35,27 @@ import net.minecraft.pathfinding.PathNavigator;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.IWorld;
+import net.minecraft.world.World;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.TagsUpdatedEvent;
 import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.EntityEvent;
 import net.minecraftforge.event.entity.EntityJoinWorldEvent;
+import net.minecraftforge.event.entity.EntityLeaveWorldEvent;
 import net.minecraftforge.event.entity.living.LivingDeathEvent;
 import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent;
 import net.minecraftforge.event.world.BlockEvent;
+import net.minecraftforge.event.world.ChunkDataEvent;
+import net.minecraftforge.event.world.ChunkEvent;
 import net.minecraftforge.event.world.ExplosionEvent;
+import net.minecraftforge.event.world.WorldEvent;
 import net.minecraftforge.eventbus.api.Event;
+import net.minecraftforge.fml.event.server.FMLServerStoppingEvent;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.Random;
 
 /**
  * This class handles game events to 'hook in' this mod's AI patterns or to help manage them outside of the AI tick.
@@ -70,29 +86,8 @@ public final class AIManager {
     public static final String TAG_ELITE_AI = "elite_ai";
     private static final String TAG_FORCE_INIT = "force_init";
     
-    /** All actions currently waiting to be performed at the end of the server tick. */
-    private static final List<Supplier<Boolean>> TICK_END_ACTIONS = new ArrayList<>();
-    
-    /** Queues an action to perform at the end of the server tick. Will be called at the end of each tick until it returns 'true'. */
-    public static void queue( Supplier<Boolean> action ) { TICK_END_ACTIONS.add( action ); }
-    
-    /** The number of remaining global block scans that can be performed this server tick. */
-    private static int scansLeft = Config.IDLE.GENERAL.scanCountGlobal.get();
-    
-    /** @return Decrements the number of global scans remaining and returns true if a scan can be made. */
-    public static boolean canScan() {
-        if( Config.IDLE.GENERAL.scanCountGlobal.get() <= 0 ) return true;
-        
-        if( scansLeft > 0 ) {
-            scansLeft--;
-            if( scansLeft == 0 ) {
-                SpecialAI.LOG.warn( "Maximum scans reached. If you are getting spammed by this under normal conditions, " +
-                        "you should change your scan settings in {}.", ConfigUtil.toRelativePath( Config.IDLE.SPEC.getFile() ) );
-            }
-            return true;
-        }
-        return false;
-    }
+    /** Queues an action to perform at the end of the server tick in the given world. See {@link DeferredAction}. */
+    public static void queue( World world, DeferredAction action ) { DeferredActionQueue.queue( world, action ); }
     
     /** @param entity Clears the entity's AI action goals entirely. */
     @SuppressWarnings( "unused" )
@@ -112,7 +107,9 @@ public final class AIManager {
     
     /** @param entity Adds dodge arrows AI to the entity. */
     private static void addDodgeArrowsAI( MobEntity entity, double dodgeChance ) {
-        entity.goalSelector.addGoal( -1, new DodgeArrowsGoal( entity, dodgeChance ) );
+        final DodgeArrowsGoal goal = new DodgeArrowsGoal( entity, dodgeChance );
+        entity.goalSelector.addGoal( -1, goal );
+        ArrowDodgeTracker.register( goal );
     }
     
     /** @param entity Adds avoid explosions AI to the entity. */
@@ -228,13 +225,38 @@ public final class AIManager {
      */
     public static void onServerTick( TickEvent.ServerTickEvent event ) {
         if( event.phase == TickEvent.Phase.END ) {
-            // Reset the global scan limit
-            scansLeft = Config.IDLE.GENERAL.scanCountGlobal.get();
+            // Let entities react to all arrows fired this tick
+            ArrowDodgeTracker.resolveDodgeChecks();
+            
+            // Pick up any config changes before the next tick's mobs spawn
+            AIProfile.checkConfig();
+            IdleTargetTables.checkConfig();
+            
+            // Split the global scan limit for the next tick
+            IdleScanScheduler.onServerTickEnd();
+            
+            // Sample idle AI counters for the stats command
+            IdleStats.onServerTickEnd();
             
             // Run any queued actions
-            if( !TICK_END_ACTIONS.isEmpty() ) {
-                TICK_END_ACTIONS.removeIf( Supplier::get );
-            }
+            DeferredActionQueue.runPending();
+            
+            // Send all block breaking progress shown this tick
+            BlockDamageBroadcaster.flush();
+        }
+    }
+    
+    /**
+     * Called for each world at the start and end of each tick.
+     * <p>
+     * It is usually wise to check the phase (start/end) before doing anything.
+     *
+     * @param event The event data.
+     */
+    public static void onWorldTick( TickEvent.WorldTickEvent event ) {
+        if( event.phase == TickEvent.Phase.START && event.world instanceof ServerWorld ) {
+            // Set up any waiting mobs before they update
+            DeferredInitQueue.process( (ServerWorld) event.world );
         }
     }
     
@@ -249,23 +271,138 @@ public final class AIManager {
 
         Entity entity = event.getEntity();
         BlockPos entityPos = new BlockPos( entity.getX(), entity.getY(), entity.getZ() );
-
+        
         // Avoid messing with entities that spawn in not fully loaded chunks.
         // Will more likely than not cause a world deadlock!
         if ( !EnvironmentHelper.isLoaded( event.getWorld(), entityPos ) ) return;
 
-        // Check if this is an arrow that can be dodged
-        if( event.getEntity() instanceof ProjectileEntity && !event.getEntity().getPersistentData().getBoolean( TAG_ARROW_DODGE_CHECKED ) ) {
-            event.getEntity().getPersistentData().putBoolean( TAG_ARROW_DODGE_CHECKED, true );
-            DodgeArrowsGoal.doDodgeCheckForArrow( event.getEntity() );
-        }
-        
         // Only initialize AI on mob entities, where the base AI system is implemented
-        if( event.getEntity() instanceof MobEntity ) {
+        if( event.getEntity() instanceof MobEntity && !DeferredInitQueue.tryDefer( (MobEntity) event.getEntity() ) ) {
             initializeSpecialAI( (MobEntity) event.getEntity() );
         }
     }
     
+    /**
+     * Called after every other handler when any entity is spawned in the world, even if the spawn was canceled.
+     *
+     * @param event The event data.
+     */
+    public static void onJoinWorldFinal( EntityJoinWorldEvent event ) {
+        if( event.getWorld().isClientSide() ) return;
+        
+        final Entity entity = event.getEntity();
+        if( event.isCanceled() ) {
+            // A canceled spawn never leaves the world, so drop anything the normal handler set up for it
+            ArrowDodgeTracker.unregister( entity );
+            DeferredInitQueue.cancel( entity );
+            return;
+        }
+        if( !entity.isAlive() ) return;
+        
+        // Keep track of all mobs so they can be alerted to their group members' deaths. This waits until the spawn
+        // can no longer be canceled, since a canceled spawn never leaves the world to be removed again
+        if( entity instanceof MobEntity ) GroupAlertRegistry.add( (MobEntity) entity );
+        
+        // Check if this is an arrow that can be dodged. This also waits, so mobs never dodge an arrow that was canceled
+        if( entity instanceof ProjectileEntity && !entity.getPersistentData().getBoolean( TAG_ARROW_DODGE_CHECKED ) &&
+                EnvironmentHelper.isLoaded( event.getWorld(), entity.blockPosition() ) ) {
+            entity.getPersistentData().putBoolean( TAG_ARROW_DODGE_CHECKED, true );
+            ArrowDodgeTracker.queueDodgeCheck( entity );
+        }
+    }
+    
+    /**
+     * Called when any entity is removed from the world, including by chunk unloading and dimension transition.
+     *
+     * @param event The event data.
+     */
+    public static void onLeaveWorld( EntityLeaveWorldEvent event ) {
+        if( event.getWorld().isClientSide() ) return;
+        
+        ArrowDodgeTracker.unregister( event.getEntity() );
+        DeferredInitQueue.cancel( event.getEntity() );
+        if( event.getEntity() instanceof MobEntity ) GroupAlertRegistry.remove( (MobEntity) event.getEntity() );
+    }
+    
+    /**
+     * Called when any entity moves into a different chunk.
+     *
+     * @param event The event data.
+     */
+    public static void onEnteringChunk( EntityEvent.EnteringChunk event ) {
+        if( event.getEntity().level.isClientSide() || !(event.getEntity() instanceof MobEntity) ) return;
+        
+        GroupAlertRegistry.move( (MobEntity) event.getEntity(), event.getNewChunkX(), event.getNewChunkZ() );
+    }
+    
+    /**
+     * Called when tags are reloaded, such as by the "/reload" command.
+     *
+     * @param event The event data.
+     */
+    public static void onTagsUpdated( TagsUpdatedEvent event ) { IdleTargetTables.onTagsUpdated(); }
+    
+    /**
+     * Called when the server begins shutting down.
+     *
+     * @param event The event data.
+     */
+    public static void onServerStopping( FMLServerStoppingEvent event ) {
+        // Worlds are saved after this, so anything still queued must be done now to be saved with them
+        DeferredActionQueue.finishAll();
+        IdleScanWorkers.onServerStopping();
+    }
+    
+    /**
+     * Called when a world is unloaded.
+     *
+     * @param event The event data.
+     */
+    public static void onWorldUnload( WorldEvent.Unload event ) {
+        if( event.getWorld().isClientSide() ) return;
+        
+        // Finish anything still queued, then drop everything tracked for the world
+        DeferredActionQueue.finish( event.getWorld() );
+        PerWorld.unload( event.getWorld() );
+    }
+    
+    /**
+     * Called when a chunk's data is read from disk, before the chunk is added to the world.
+     *
+     * @param event The event data.
+     */
+    public static void onChunkDataLoad( ChunkDataEvent.Load event ) { HiddenMobIndex.onChunkDataLoad( event ); }
+    
+    /**
+     * Called when a chunk's data is written to disk.
+     *
+     * @param event The event data.
+     */
+    public static void onChunkDataSave( ChunkDataEvent.Save event ) { HiddenMobIndex.onChunkDataSave( event ); }
+    
+    /**
+     * Called when a chunk is unloaded.
+     *
+     * @param event The event data.
+     */
+    public static void onChunkUnload( ChunkEvent.Unload event ) {
+        if( event.getWorld() == null || event.getWorld().isClientSide() ) return;
+        
+        HiddenMobIndex.onChunkUnload( event );
+        IdleTargetIndex.onChunkUnload( event );
+    }
+    
+    /**
+     * Called when a block changes and notifies its neighbors.
+     *
+     * @param event The event data.
+     */
+    public static void onNeighborNotify( BlockEvent.NeighborNotifyEvent event ) {
+        if( !event.getWorld().isClientSide() ) {
+            IdleTargetIndex.onBlockChanged( event.getWorld(), event.getPos() );
+        }
+    }
+    
     /**
      * Called when a mob is spawned in the world, including by chunk loading and dimension transition.
      *
@@ -274,11 +411,13 @@ public final class AIManager {
     public static void initializeSpecialAI( MobEntity entity ) {
         // The tag all info for this mod is stored on for the entity
         final CompoundNBT tag = NBTHelper.getForgeData( entity, SpecialAI.MOD_ID );
+        // The config settings for this entity's type
+        final AIProfile profile = AIProfile.get( entity );
+        final Random random = entity.getRandom();
         
         // Dodge arrows
         if( !NBTHelper.containsNumber( tag, TAG_DODGE_ARROWS ) ) {
-            final double[] dodgeValues = Config.GENERAL.REACTIONS.dodgeArrowsList.getValues( entity );
-            tag.putDouble( TAG_DODGE_ARROWS, dodgeValues != null && entity.getRandom().nextDouble() < dodgeValues[0] ? dodgeValues[1] : 0.0 );
+            tag.putDouble( TAG_DODGE_ARROWS, AIProfile.roll( random, profile.DODGE_ARROWS_CHANCE ) ? profile.DODGE_ARROWS_VALUE : 0.0 );
         }
         if( tag.getDouble( TAG_DODGE_ARROWS ) > 0.0F ) {
             addDodgeArrowsAI( entity, tag.getDouble( TAG_DODGE_ARROWS ) );
@@ -290,7 +429,7 @@ public final class AIManager {
             
             // Avoid explosions
             if( !NBTHelper.containsNumber( tag, TAG_AVOID_EXPLOSIONS ) ) {
-                tag.putDouble( TAG_AVOID_EXPLOSIONS, Config.GENERAL.REACTIONS.avoidExplosionsList.getValue( entity ) );
+                tag.putDouble( TAG_AVOID_EXPLOSIONS, profile.AVOID_EXPLOSIONS );
             }
             if( tag.getDouble( TAG_AVOID_EXPLOSIONS ) > 0.0 ) {
                 addAvoidExplosionsAI( (CreatureEntity) entity, tag.getDouble( TAG_AVOID_EXPLOSIONS ) );
@@ -309,7 +448,7 @@ public final class AIManager {
             
             // Depacify
             if( !NBTHelper.containsNumber( tag, TAG_DEPACIFY ) ) {
-                tag.putBoolean( TAG_DEPACIFY, Config.GENERAL.ANIMALS.depacifyList.rollChance( entity ) );
+                tag.putBoolean( TAG_DEPACIFY, AIProfile.roll( random, profile.DEPACIFY_CHANCE ) );
             }
             if( tag.getBoolean( TAG_DEPACIFY ) ) {
                 addHurtByTargetAI( (CreatureEntity) entity );
@@ -318,7 +457,7 @@ public final class AIManager {
             
             // Aggressive
             if( !NBTHelper.containsNumber( tag, TAG_AGGRESSIVE ) ) {
-                tag.putBoolean( TAG_AGGRESSIVE, Config.GENERAL.ANIMALS.aggressiveList.rollChance( entity ) );
+                tag.putBoolean( TAG_AGGRESSIVE, AIProfile.roll( random, profile.AGGRESSIVE_CHANCE ) );
             }
             if( tag.getBoolean( TAG_AGGRESSIVE ) ) {
                 addAggressiveTargetAI( (CreatureEntity) entity );
@@ -332,41 +471,29 @@ public final class AIManager {
         
         // Call for help
         if( !NBTHelper.containsNumber( tag, TAG_CALL_FOR_HELP ) ) {
-            tag.putBoolean( TAG_CALL_FOR_HELP, Config.GENERAL.REACTIONS.callForHelpList.rollChance( entity ) );
+            tag.putBoolean( TAG_CALL_FOR_HELP, AIProfile.roll( random, profile.CALL_FOR_HELP_CHANCE ) );
         }
         if( tag.getBoolean( TAG_CALL_FOR_HELP ) ) {
             setHelpAI( entity );
         }
         
         // Rider
-        final boolean small = Config.GENERAL.JOCKEYS.riderWhitelistSmall.get().contains( entity );
         if( !NBTHelper.containsNumber( tag, TAG_RIDER ) ) {
-            final boolean makeRider;
-            if( Config.GENERAL.JOCKEYS.riderBlacklist.get().contains( entity ) ) {
-                makeRider = false;
-            }
-            // Small rider whitelist is a special case, so it gets priority over the normal whitelist
-            else if( small ) {
-                makeRider = Config.GENERAL.JOCKEYS.riderWhitelistSmall.get().rollChance( entity );
-            }
-            else {
-                makeRider = Config.GENERAL.JOCKEYS.riderWhitelist.get().rollChance( entity );
-            }
-            tag.putBoolean( TAG_RIDER, makeRider );
+            tag.putBoolean( TAG_RIDER, AIProfile.roll( random, profile.RIDER_CHANCE ) );
         }
         if( tag.getBoolean( TAG_RIDER ) ) {
-            addRiderAI( entity, small );
+            addRiderAI( entity, profile.SMALL_RIDER );
         }
         
         // Passive griefing
         if( !NBTHelper.containsNumber( tag, TAG_HIDE ) ) {
-            tag.putBoolean( TAG_HIDE, Config.IDLE.HIDING.entityList.rollChance( entity ) );
+            tag.putBoolean( TAG_HIDE, AIProfile.roll( random, profile.HIDE_CHANCE ) );
         }
         if( !NBTHelper.containsNumber( tag, TAG_GRIEF ) ) {
-            tag.putBoolean( TAG_GRIEF, Config.IDLE.GRIEFING.entityList.rollChance( entity ) );
+            tag.putBoolean( TAG_GRIEF, AIProfile.roll( random, profile.GRIEF_CHANCE ) );
         }
         if( !NBTHelper.containsNumber( tag, TAG_FIDDLE ) ) {
-            tag.putBoolean( TAG_FIDDLE, Config.IDLE.FIDDLING.entityList.rollChance( entity ) );
+            tag.putBoolean( TAG_FIDDLE, AIProfile.roll( random, profile.FIDDLE_CHANCE ) );
         }
         addIdleAI( entity, tag.getBoolean( TAG_HIDE ), tag.getBoolean( TAG_GRIEF ), tag.getBoolean( TAG_FIDDLE ) );
 
@@ -379,7 +506,7 @@ public final class AIManager {
         
         // Door-breaking AI
         if( !NBTHelper.containsNumber( tag, TAG_DOOR_BREAK ) ) {
-            tag.putBoolean( TAG_DOOR_BREAK, Config.GENERAL.DOOR_BREAKING.entityList.rollChance( entity ) );
+            tag.putBoolean( TAG_DOOR_BREAK, AIProfile.roll( random, profile.DOOR_BREAK_CHANCE ) );
         }
         if( tag.getBoolean( TAG_DOOR_BREAK ) ) {
             addDoorBreakAI( entity );
@@ -387,7 +514,7 @@ public final class AIManager {
         
         // Elite AI
         final CompoundNBT eliteTag = NBTHelper.containsCompound( tag, TAG_ELITE_AI ) ?
-                tag.getCompound( TAG_ELITE_AI ) : initializeEliteAIData( tag, entity );
+                tag.getCompound( TAG_ELITE_AI ) : initializeEliteAIData( tag, entity, profile );
         EliteAIHelper.loadEliteAI( entity, eliteTag, tag.getBoolean( TAG_FORCE_INIT ) );
         tag.remove( TAG_FORCE_INIT );
     }
@@ -396,24 +523,17 @@ public final class AIManager {
      * Picks the elite AIs a new entity should have, saves all decisions to the entity data,
      * and marks the entity for attribute/equipment/etc. initialization.
      */
-    private static CompoundNBT initializeEliteAIData( CompoundNBT tag, MobEntity entity ) {
+    private static CompoundNBT initializeEliteAIData( CompoundNBT tag, MobEntity entity, AIProfile profile ) {
         CompoundNBT eliteTag = NBTHelper.getOrCreateCompound( tag, TAG_ELITE_AI );
         
         // Apply random-weighted AI selection
-        final double[] chances = Config.ELITE_AI.GENERAL.entityList.getValues( entity );
-        if( chances != null ) {
-            for( double chance : chances ) {
-                if( chance > 0.0 && entity.getRandom().nextDouble() < chance ) {
-                    EliteAIHelper.saveEliteAI( eliteTag, entity );
-                }
-            }
+        for( int i = profile.rollRandomEliteAICount( entity.getRandom() ); i > 0; i-- ) {
+            EliteAIHelper.saveEliteAI( eliteTag, entity );
         }
         
         // Apply specific AI selection
-        for( EliteAIConfig.EliteAICategory ai : Config.ELITE_AI.getEliteAICategories() ) {
-            if( ai.entityList.rollChance( entity ) ) {
-                EliteAIHelper.saveEliteAI( eliteTag, ai.TYPE );
-            }
+        for( EliteAIType ai : profile.rollEliteAITypes( entity.getRandom() ) ) {
+            EliteAIHelper.saveEliteAI( eliteTag, ai );
         }
         
         // Mark this entity to init, if not already forced
@@ -446,13 +566,14 @@ public final class AIManager {
                 AxisAlignedBB boundingBox = AxisAlignedBB.unitCubeFromLowerCorner( entity.position() ).inflate( range, 10.0, range );
                 
                 // Note this logic is duplicated from the "hurt by target" goal, it is just massively simplified
-                for( MobEntity other : entity.level.getLoadedEntitiesOfClass( entity.getClass(), boundingBox ) ) {
+                if( !(entity.level instanceof ServerWorld) ) return;
+                GroupAlertRegistry.forEachInGroup( (ServerWorld) entity.level, entity.getClass(), boundingBox, ( other ) -> {
                     if( entity != other && other.getTarget() == null &&
                             (!(entity instanceof TameableEntity) || ((TameableEntity) entity).getOwner() == ((TameableEntity) other).getOwner()) &&
                             !other.isAlliedTo( target ) ) {
                         other.setTarget( (LivingEntity) target );
                     }
-                }
+                } );
             }
         }
     }
@@ -489,9 +610,7 @@ public final class AIManager {
         if( !world.isClientSide() ) {
             LivingEntity source = event.getExplosion().getSourceMob();
             PlayerEntity player = source instanceof PlayerEntity ? (PlayerEntity) source : null;
-            for( BlockPos pos : event.getAffectedBlocks() ) {
-                BlockHelper.spawnHiddenMob( world, pos, player, true );
-            }
+            BlockHelper.spawnHiddenMobs( world, event.getAffectedBlocks(), player );
         }
     }
 }
\ No newline at end of file
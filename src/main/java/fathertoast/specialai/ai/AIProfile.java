@@ -0,0 +1,177 @@
+package fathertoast.specialai.ai;
+
+import fathertoast.crust.api.config.common.field.EntityListField;
+import fathertoast.specialai.ai.elite.EliteAIType;
+import fathertoast.specialai.config.Config;
+import fathertoast.specialai.config.EliteAIConfig;
+import net.minecraft.entity.EntityType;
+import net.minecraft.entity.MobEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * The results of looking up an entity type in every config list that decides which AI it gets on spawn.
+ * <p>
+ * The config lists only depend on an entity's type (and class), so the lookups are done once for the first mob of each
+ * type and cached until any of the lists change. Spawning mobs then only need a single map lookup and their own
+ * random rolls.
+ */
+public final class AIProfile {
+    /** The profile for each entity type seen since the config was last changed. */
+    private static final Map<EntityType<?>, AIProfile> PROFILES = new HashMap<>();
+    /** Gets the current value of every config list used to build profiles. New objects are loaded on config reload. */
+    private static final Supplier<?>[] CONFIG_VALUES = getConfigValues();
+    /** The config list values the cached profiles were built from, in the same order. */
+    private static final Object[] BUILT_FROM = Arrays.stream( CONFIG_VALUES ).map( Supplier::get ).toArray();
+    
+    /** @return Returns the profile for the mob's entity type, building it if needed. */
+    public static AIProfile get( MobEntity entity ) {
+        AIProfile profile = PROFILES.get( entity.getType() );
+        if( profile == null ) {
+            profile = new AIProfile( entity );
+            PROFILES.put( entity.getType(), profile );
+        }
+        return profile;
+    }
+    
+    /** Called once per server tick to discard all profiles if the config has been changed. */
+    public static void checkConfig() {
+        // Compare in place, since this runs every tick and the config rarely changes
+        boolean changed = false;
+        for( int i = 0; i < CONFIG_VALUES.length; i++ ) {
+            final Object current = CONFIG_VALUES[i].get();
+            if( !Objects.equals( BUILT_FROM[i], current ) ) {
+                BUILT_FROM[i] = current;
+                changed = true;
+            }
+        }
+        if( changed ) PROFILES.clear();
+    }
+    
+    /** @return Returns a getter for every config list used to build profiles. */
+    private static Supplier<?>[] getConfigValues() {
+        final List<Supplier<?>> values = new ArrayList<>();
+        addValues( values, Config.GENERAL.REACTIONS.dodgeArrowsList );
+        addValues( values, Config.GENERAL.REACTIONS.avoidExplosionsList );
+        addValues( values, Config.GENERAL.REACTIONS.callForHelpList );
+        addValues( values, Config.GENERAL.ANIMALS.depacifyList );
+        addValues( values, Config.GENERAL.ANIMALS.aggressiveList );
+        values.add( Config.GENERAL.JOCKEYS.riderWhitelist::get );
+        values.add( Config.GENERAL.JOCKEYS.riderWhitelistSmall::get );
+        values.add( Config.GENERAL.JOCKEYS.riderBlacklist::get );
+        addValues( values, Config.IDLE.HIDING.entityList );
+        addValues( values, Config.IDLE.GRIEFING.entityList );
+        addValues( values, Config.IDLE.FIDDLING.entityList );
+        addValues( values, Config.GENERAL.DOOR_BREAKING.entityList );
+        addValues( values, Config.ELITE_AI.GENERAL.entityList );
+        for( EliteAIConfig.EliteAICategory ai : Config.ELITE_AI.getEliteAICategories() ) {
+            addValues( values, ai.entityList );
+        }
+        return values.toArray( new Supplier<?>[0] );
+    }
+    
+    /** Adds getters for both halves of a combined list. */
+    private static void addValues( List<Supplier<?>> values, EntityListField.Combined list ) {
+        values.add( list.WHITELIST::get );
+        values.add( list.BLACKLIST::get );
+    }
+    
+    /** The chance to dodge arrows. */
+    public final double DODGE_ARROWS_CHANCE;
+    /** The dodge chance given to mobs that pass the roll to dodge arrows. */
+    public final double DODGE_ARROWS_VALUE;
+    /** The chance to avoid explosions, which is also the speed multiplier to use. */
+    public final double AVOID_EXPLOSIONS;
+    /** The chance to fight back when hurt. */
+    public final double DEPACIFY_CHANCE;
+    /** The chance to attack players on sight. */
+    public final double AGGRESSIVE_CHANCE;
+    /** The chance to call for help when hurt. */
+    public final double CALL_FOR_HELP_CHANCE;
+    /** True if the mob is a small rider. */
+    public final boolean SMALL_RIDER;
+    /** The chance to seek out mounts. */
+    public final double RIDER_CHANCE;
+    /** The chance to hide in containers. */
+    public final double HIDE_CHANCE;
+    /** The chance to grief blocks. */
+    public final double GRIEF_CHANCE;
+    /** The chance to fiddle with blocks. */
+    public final double FIDDLE_CHANCE;
+    /** The chance to break doors. */
+    public final double DOOR_BREAK_CHANCE;
+    /** The chances to gain a random elite AI, each rolled separately. */
+    private final double[] ELITE_AI_CHANCES;
+    /** The elite AIs that may be gained directly. */
+    private final EliteAIType[] ELITE_AI_TYPES;
+    /** The chance to gain each of the elite AIs that may be gained directly. */
+    private final double[] ELITE_AI_TYPE_CHANCES;
+    
+    private AIProfile( MobEntity entity ) {
+        final double[] dodgeValues = Config.GENERAL.REACTIONS.dodgeArrowsList.getValues( entity );
+        DODGE_ARROWS_CHANCE = dodgeValues == null ? 0.0 : dodgeValues[0];
+        DODGE_ARROWS_VALUE = dodgeValues == null ? 0.0 : dodgeValues[1];
+        AVOID_EXPLOSIONS = Config.GENERAL.REACTIONS.avoidExplosionsList.getValue( entity );
+        DEPACIFY_CHANCE = Config.GENERAL.ANIMALS.depacifyList.getValue( entity );
+        AGGRESSIVE_CHANCE = Config.GENERAL.ANIMALS.aggressiveList.getValue( entity );
+        CALL_FOR_HELP_CHANCE = Config.GENERAL.REACTIONS.callForHelpList.getValue( entity );
+        
+        SMALL_RIDER = Config.GENERAL.JOCKEYS.riderWhitelistSmall.get().contains( entity );
+        if( Config.GENERAL.JOCKEYS.riderBlacklist.get().contains( entity ) ) {
+            RIDER_CHANCE = 0.0;
+        }
+        // Small rider whitelist is a special case, so it gets priority over the normal whitelist
+        else if( SMALL_RIDER ) {
+            RIDER_CHANCE = Config.GENERAL.JOCKEYS.riderWhitelistSmall.get().getValue( entity );
+        }
+        else {
+            RIDER_CHANCE = Config.GENERAL.JOCKEYS.riderWhitelist.get().getValue( entity );
+        }
+        
+        HIDE_CHANCE = Config.IDLE.HIDING.entityList.getValue( entity );
+        GRIEF_CHANCE = Config.IDLE.GRIEFING.entityList.getValue( entity );
+        FIDDLE_CHANCE = Config.IDLE.FIDDLING.entityList.getValue( entity );
+        DOOR_BREAK_CHANCE = Config.GENERAL.DOOR_BREAKING.entityList.getValue( entity );
+        
+        final double[] eliteChances = Config.ELITE_AI.GENERAL.entityList.getValues( entity );
+        ELITE_AI_CHANCES = eliteChances == null ? new double[0] : eliteChances.clone();
+        final List<EliteAIConfig.EliteAICategory> eliteCategories = new ArrayList<>();
+        for( EliteAIConfig.EliteAICategory ai : Config.ELITE_AI.getEliteAICategories() ) {
+            if( ai.entityList.getValue( entity ) > 0.0 ) eliteCategories.add( ai );
+        }
+        ELITE_AI_TYPES = new EliteAIType[eliteCategories.size()];
+        ELITE_AI_TYPE_CHANCES = new double[eliteCategories.size()];
+        for( int i = 0; i < ELITE_AI_TYPES.length; i++ ) {
+            ELITE_AI_TYPES[i] = eliteCategories.get( i ).TYPE;
+            ELITE_AI_TYPE_CHANCES[i] = eliteCategories.get( i ).entityList.getValue( entity );
+        }
+    }
+    
+    /** @return Returns the number of random elite AIs rolled for a new mob. */
+    public int rollRandomEliteAICount( Random random ) {
+        int count = 0;
+        for( double chance : ELITE_AI_CHANCES ) {
+            if( chance > 0.0 && random.nextDouble() < chance ) count++;
+        }
+        return count;
+    }
+    
+    /** @return Returns the elite AIs rolled directly for a new mob. */
+    public List<EliteAIType> rollEliteAITypes( Random random ) {
+        final List<EliteAIType> rolled = new ArrayList<>();
+        for( int i = 0; i < ELITE_AI_TYPES.length; i++ ) {
+            if( roll( random, ELITE_AI_TYPE_CHANCES[i] ) ) rolled.add( ELITE_AI_TYPES[i] );
+        }
+        return rolled;
+    }
+    
+    /** @return Returns true if a random roll passes the chance. */
+    public static boolean roll( Random random, double chance ) { return chance > 0.0 && random.nextDouble() < chance; }
+}
\ No newline at end of file
@@ -0,0 +1,63 @@
+package fathertoast.specialai.ai;
+
+import fathertoast.specialai.config.Config;
+import net.minecraft.entity.MobEntity;
+import net.minecraft.entity.player.PlayerEntity;
+
+/**
+ * Tracks how close a mob is to the nearest player, so that its idle AI can search less often (or not at all) when no
+ * player is around to see it, such as in spawn chunks or chunks kept loaded by chunk loaders.
+ * <p>
+ * The tier is only worked out again every few seconds, so checking it each tick is cheap.
+ */
+public class ActivityTier {
+    /** The number of ticks between each time the tier is worked out. */
+    private static final int UPDATE_INTERVAL = 100;
+    
+    /** The possible tiers, from most to least active. */
+    public enum Tier { NEAR, FAR, ASLEEP }
+    
+    /** The mob this tracks. */
+    private final MobEntity MOB;
+    
+    /** The mob's current tier. */
+    private Tier tier = Tier.NEAR;
+    /** The game time when the tier should next be worked out. */
+    private long nextUpdate;
+    
+    /**
+     * @param mob The mob to track.
+     */
+    public ActivityTier( MobEntity mob ) { MOB = mob; }
+    
+    /** @return Returns the mob's current tier. Always near if activity tiers are disabled. */
+    public Tier get() {
+        if( !Config.GENERAL.PERFORMANCE.activityTiers.get() ) return Tier.NEAR;
+        
+        final long now = MOB.level.getGameTime();
+        if( now >= nextUpdate ) {
+            // Spread updates out so mobs loaded together don't all update on the same tick
+            nextUpdate = now + UPDATE_INTERVAL + MOB.getRandom().nextInt( 20 );
+            tier = getTier();
+        }
+        return tier;
+    }
+    
+    /** @return Returns true if the mob's idle AI should not search at all right now. */
+    public boolean isAsleep() { return get() == Tier.ASLEEP; }
+    
+    /** @return Returns the delay between searches for the mob's current tier, given the usual delay. */
+    public int stretch( int delay ) {
+        return get() == Tier.FAR ? delay * Config.GENERAL.PERFORMANCE.activityTiersFarMultiplier.get() : delay;
+    }
+    
+    /** @return Works out the mob's tier from the distance to the nearest player. */
+    private Tier getTier() {
+        final double nearRange = Config.GENERAL.PERFORMANCE.activityTiersNearRange.get();
+        final double sleepRange = Config.GENERAL.PERFORMANCE.activityTiersSleepRange.get();
+        
+        final PlayerEntity player = MOB.level.getNearestPlayer( MOB, Math.max( nearRange, sleepRange ) );
+        if( player == null ) return Tier.ASLEEP;
+        return player.distanceToSqr( MOB ) <= nearRange * nearRange ? Tier.NEAR : Tier.FAR;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,219 @@
+package fathertoast.specialai.ai;
+
+import fathertoast.specialai.util.PerWorld;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.entity.CreatureEntity;
+import net.minecraft.entity.Entity;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraft.world.server.ServerWorld;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the entities in each world that can dodge arrows, and of the projectiles fired in each world
+ * during the current tick.
+ * <p>
+ * Projectiles are only queued as they join the world. At the end of the tick, all projectiles fired in a world are
+ * resolved in a single pass against one set of candidates, and each entity makes at most one dodge decision per tick
+ * (reacting to the earliest projectile fired in its direction).
+ */
+public final class ArrowDodgeTracker {
+    /** The maximum horizontal distance from the arrow at which entities will consider dodging. */
+    private static final int RANGE_HORIZONTAL = 24;
+    /** The maximum vertical distance (in whole blocks) from the arrow at which entities will consider dodging. */
+    private static final int RANGE_VERTICAL = 16;
+    /** The number of chunks out from an entity's chunk that may contain arrows within horizontal range. */
+    private static final int CHUNK_RANGE = (RANGE_HORIZONTAL >> 4) + 1;
+    
+    /** The rough number of candidates visited by one chunk-section envelope lookup; used to pick how to resolve a tick. */
+    private static final int ENVELOPE_LOOKUP_COST = 32;
+    /** At or above this many queued projectiles, they are bucketed by chunk so each candidate only checks nearby ones. */
+    private static final int BUCKET_THRESHOLD = 8;
+    
+    /** The dodging entities and queued projectiles for each world. */
+    private static final PerWorld<Tracker> TRACKERS = new PerWorld<>( world -> new Tracker() );
+    
+    /** Registers a newly created goal so its owner will be alerted to arrows fired in its direction. */
+    static void register( DodgeArrowsGoal goal ) {
+        if( goal.mob.level instanceof ServerWorld ) {
+            TRACKERS.get( (ServerWorld) goal.mob.level ).DODGERS.put( goal.mob, goal );
+        }
+    }
+    
+    /** Unregisters the entity's dodge arrows goal, if it has one. Called when the entity is removed from its world. */
+    public static void unregister( Entity entity ) {
+        final Tracker tracker = TRACKERS.getIfPresent( entity.level );
+        if( tracker != null ) tracker.DODGERS.remove( entity );
+    }
+    
+    /** Called for each arrow the first time it is spawned in the world to queue a check for entities that may dodge it. */
+    public static void queueDodgeCheck( Entity arrow ) {
+        // Nothing to do if no entity in the world can dodge
+        final Tracker tracker = TRACKERS.getIfPresent( arrow.level );
+        if( tracker == null || tracker.DODGERS.isEmpty() ) return;
+        
+        // Calculate the arrow's direction; arrows moving straight up or down can't be sidestepped
+        final Vector3d arrowMotion = arrow.getDeltaMovement();
+        final double vH = Math.sqrt( arrowMotion.x * arrowMotion.x + arrowMotion.z * arrowMotion.z );
+        if( vH <= 0.0 ) return;
+        
+        tracker.PENDING.add( new IncomingArrow( tracker.PENDING.size(), arrow.position(),
+                new Vector3d( arrowMotion.x / vH, 0.0, arrowMotion.z / vH ), arrow.getBbWidth() + 0.3F ) );
+    }
+    
+    /** Called at the end of each server tick to alert dodging entities to all arrows fired during the tick. */
+    public static void resolveDodgeChecks() { TRACKERS.forEach( ( world, tracker ) -> tracker.resolve( world ) ); }
+    
+    /** The dodging entities and queued projectiles for a single world. */
+    private static class Tracker {
+        /** The arrow dodging goal of each entity in the world that has one. */
+        final Map<Entity, DodgeArrowsGoal> DODGERS = new HashMap<>();
+        /** The projectiles fired in the world so far this tick, in the order they were fired. */
+        final List<IncomingArrow> PENDING = new ArrayList<>();
+        
+        /** Makes the dodge decisions for this tick and clears the queued projectiles. */
+        void resolve( ServerWorld world ) {
+            if( PENDING.isEmpty() ) return;
+            if( !DODGERS.isEmpty() ) {
+                // Use whichever side is cheaper to walk - the dodging entities or the space around the projectiles
+                if( DODGERS.size() <= PENDING.size() * ENVELOPE_LOOKUP_COST ) {
+                    resolveByCandidate();
+                }
+                else {
+                    resolveByArrow( world );
+                }
+            }
+            PENDING.clear();
+        }
+        
+        /** Checks each dodging entity once against the projectiles that could be near it. */
+        private void resolveByCandidate() {
+            final Long2ObjectMap<List<IncomingArrow>> buckets = PENDING.size() < BUCKET_THRESHOLD ? null : bucketByChunk();
+            for( DodgeArrowsGoal goal : DODGERS.values() ) {
+                if( goal.mob instanceof CreatureEntity ) {
+                    final Vector3d pos = goal.mob.position();
+                    final IncomingArrow arrow = buckets == null ? findFirstThreat( pos ) : findFirstThreat( pos, buckets );
+                    if( arrow != null ) goal.setDodgeTarget( arrow.DIRECTION );
+                }
+            }
+        }
+        
+        /** Checks the chunk sections around each projectile, deciding each dodging entity's reaction only once. */
+        private void resolveByArrow( ServerWorld world ) {
+            final Map<DodgeArrowsGoal, IncomingArrow> decisions = new HashMap<>();
+            for( IncomingArrow arrow : PENDING ) {
+                for( CreatureEntity entity : world.getEntitiesOfClass( CreatureEntity.class, arrow.getEnvelope() ) ) {
+                    final DodgeArrowsGoal goal = DODGERS.get( entity );
+                    if( goal != null && !decisions.containsKey( goal ) && arrow.threatens( entity.position() ) ) {
+                        decisions.put( goal, arrow );
+                    }
+                }
+            }
+            decisions.forEach( ( goal, arrow ) -> goal.setDodgeTarget( arrow.DIRECTION ) );
+        }
+        
+        /** @return Returns the queued projectiles grouped by the chunk they were fired in. */
+        private Long2ObjectMap<List<IncomingArrow>> bucketByChunk() {
+            final Long2ObjectMap<List<IncomingArrow>> buckets = new Long2ObjectOpenHashMap<>();
+            for( IncomingArrow arrow : PENDING ) {
+                final long key = ChunkPos.asLong( MathHelper.floor( arrow.POSITION.x ) >> 4, MathHelper.floor( arrow.POSITION.z ) >> 4 );
+                List<IncomingArrow> bucket = buckets.get( key );
+                if( bucket == null ) {
+                    bucket = new ArrayList<>();
+                    buckets.put( key, bucket );
+                }
+                bucket.add( arrow );
+            }
+            return buckets;
+        }
+        
+        /** @return Returns the earliest queued projectile fired toward the position, or null if there is none. */
+        @Nullable
+        private IncomingArrow findFirstThreat( Vector3d pos ) {
+            for( IncomingArrow arrow : PENDING ) {
+                if( arrow.threatens( pos ) ) return arrow;
+            }
+            return null;
+        }
+        
+        /** @return Returns the earliest bucketed projectile fired toward the position, or null if there is none. */
+        @Nullable
+        private IncomingArrow findFirstThreat( Vector3d pos, Long2ObjectMap<List<IncomingArrow>> buckets ) {
+            final int chunkX = MathHelper.floor( pos.x ) >> 4;
+            final int chunkZ = MathHelper.floor( pos.z ) >> 4;
+            IncomingArrow first = null;
+            for( int x = chunkX - CHUNK_RANGE; x <= chunkX + CHUNK_RANGE; x++ ) {
+                for( int z = chunkZ - CHUNK_RANGE; z <= chunkZ + CHUNK_RANGE; z++ ) {
+                    final List<IncomingArrow> bucket = buckets.get( ChunkPos.asLong( x, z ) );
+                    if( bucket == null ) continue;
+                    for( IncomingArrow arrow : bucket ) {
+                        if( first != null && arrow.INDEX >= first.INDEX ) break; // Buckets are in firing order
+                        if( arrow.threatens( pos ) ) {
+                            first = arrow;
+                            break;
+                        }
+                    }
+                }
+            }
+            return first;
+        }
+    }
+    
+    /** The state of a projectile at the moment it was fired. */
+    private static class IncomingArrow {
+        /** The order this was fired in during the tick. */
+        final int INDEX;
+        /** The position the projectile was fired from. */
+        final Vector3d POSITION;
+        /** The projectile's normalized horizontal direction. */
+        final Vector3d DIRECTION;
+        /** The width of the projectile's line of fire. */
+        final float WIDTH;
+        
+        IncomingArrow( int index, Vector3d position, Vector3d direction, float width ) {
+            INDEX = index;
+            POSITION = position;
+            DIRECTION = direction;
+            WIDTH = width;
+        }
+        
+        /** @return Returns true if an entity at the given position is within range of the arrow and inside its line of fire. */
+        boolean threatens( Vector3d entityPos ) {
+            // Check vertical range
+            final int distanceY = Math.abs( (int) entityPos.y - (int) POSITION.y );
+            if( distanceY > RANGE_VERTICAL ) return false;
+            
+            // Check horizontal range
+            final double distanceX = entityPos.x - POSITION.x;
+            final double distanceZ = entityPos.z - POSITION.z;
+            final double distanceH = Math.sqrt( distanceX * distanceX + distanceZ * distanceZ );
+            if( distanceH > RANGE_HORIZONTAL ) return false;
+            
+            // Check ray width
+            final double cos = (DIRECTION.x * distanceX + DIRECTION.z * distanceZ) / distanceH;
+            final double sin = Math.sqrt( 1 - cos * cos );
+            return WIDTH > distanceH * sin;
+        }
+        
+        /**
+         * @return Returns a box containing every position this arrow {@linkplain #threatens(Vector3d) threatens}.
+         * This is the bounding box of the arrow's path (forward and backward) out to the horizontal range, widened by the
+         * ray width and padded by one block so that any entity positioned inside the envelope also has its hitbox inside.
+         */
+        AxisAlignedBB getEnvelope() {
+            final double reachX = Math.abs( DIRECTION.x ) * RANGE_HORIZONTAL + WIDTH + 1.0;
+            final double reachZ = Math.abs( DIRECTION.z ) * RANGE_HORIZONTAL + WIDTH + 1.0;
+            return new AxisAlignedBB(
+                    POSITION.x - reachX, POSITION.y - RANGE_VERTICAL - 2.0, POSITION.z - reachZ,
+                    POSITION.x + reachX, POSITION.y + RANGE_VERTICAL + 2.0, POSITION.z + reachZ );
+        }
+    }
+}
\ No newline at end of file
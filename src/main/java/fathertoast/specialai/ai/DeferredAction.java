@@ -0,0 +1,63 @@
+package fathertoast.specialai.ai;
+
+import net.minecraft.entity.Entity;
+
+/**
+ * An action to perform at the end of the server tick, for things that can't safely be done during the AI tick.
+ * <p>
+ * Actions keep references to the entities they act on, and are dropped without running once any of those entities
+ * has been removed. An action that keeps failing is given up on after a limited number of attempts.
+ */
+public abstract class DeferredAction {
+    /** The default number of times an action is attempted before it is given up on. */
+    public static final int DEFAULT_MAX_ATTEMPTS = 20;
+    
+    /** The entities this action acts on. */
+    private final Entity[] ENTITIES;
+    /** The number of times this action is attempted before it is given up on. */
+    private final int MAX_ATTEMPTS;
+    
+    /** The number of times this action has been attempted. */
+    private int attempts;
+    
+    /**
+     * @param entities The entities this action acts on. The action is dropped if any of them are removed.
+     */
+    protected DeferredAction( Entity... entities ) { this( DEFAULT_MAX_ATTEMPTS, entities ); }
+    
+    /**
+     * @param maxAttempts The number of times this action is attempted before it is given up on.
+     * @param entities    The entities this action acts on. The action is dropped if any of them are removed.
+     */
+    protected DeferredAction( int maxAttempts, Entity... entities ) {
+        MAX_ATTEMPTS = maxAttempts;
+        ENTITIES = entities;
+    }
+    
+    /** Called to perform the action. Returns true if the action is complete, or false to try again next tick. */
+    protected abstract boolean run();
+    
+    /**
+     * Called instead of {@link #run()} when the action's world is shutting down, so the action will not get another
+     * tick. Actions that must not be lost should do all of their remaining work here. Returns true if the action was
+     * completed, or false if it was dropped. By default, the action is dropped.
+     */
+    protected boolean finish() { return false; }
+    
+    /** @return Returns true if any of the entities this action acts on have been removed. */
+    boolean isOrphaned() {
+        for( Entity entity : ENTITIES ) {
+            if( entity.removed ) return true;
+        }
+        return false;
+    }
+    
+    /** @return Attempts this action and returns true if it completed. */
+    boolean attempt() {
+        attempts++;
+        return run();
+    }
+    
+    /** @return Returns true if this action has used up all its attempts. */
+    boolean isExpired() { return attempts >= MAX_ATTEMPTS; }
+}
\ No newline at end of file
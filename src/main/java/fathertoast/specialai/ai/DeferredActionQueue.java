@@ -0,0 +1,138 @@
+package fathertoast.specialai.ai;
+
+import fathertoast.specialai.util.PerWorld;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.World;
+import net.minecraft.world.server.ServerWorld;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Holds the actions waiting to be performed at the end of the server tick in each world, and counts what happens to them.
+ *
+ * @see DeferredAction
+ */
+public final class DeferredActionQueue {
+    /** The actions waiting to be performed in each world, in the order they were queued. */
+    private static final PerWorld<List<DeferredAction>> PENDING = new PerWorld<>( world -> new ArrayList<>() );
+    
+    /** Actions queued while the queue is being worked through, held back until it is done so the lists aren't changed underneath it. */
+    private static final List<Runnable> HELD_BACK = new ArrayList<>();
+    /** True while the queue is being worked through. */
+    private static boolean running;
+    
+    /** The number of actions waiting in all worlds; lets the tick skip the queues entirely when nothing is pending. */
+    private static int pendingCount;
+    
+    /** The total number of actions queued. */
+    private static long queuedCount;
+    /** The total number of actions completed. */
+    private static long executedCount;
+    /** The total number of actions dropped because an entity they act on was removed, or their world shut down first. */
+    private static long droppedCount;
+    /** The total number of actions given up on after using all their attempts. */
+    private static long expiredCount;
+    
+    /** Queues an action to perform at the end of the server tick. Does nothing if the world is not server-side. */
+    static void queue( World world, DeferredAction action ) {
+        if( running ) {
+            // Queued by another action as it runs; these wait for the next tick
+            HELD_BACK.add( () -> queue( world, action ) );
+        }
+        else if( world instanceof ServerWorld ) {
+            PENDING.get( (ServerWorld) world ).add( action );
+            pendingCount++;
+            queuedCount++;
+        }
+    }
+    
+    /** Called at the end of each server tick to perform all pending actions. */
+    static void runPending() {
+        if( pendingCount <= 0 ) return;
+        pendingCount = 0;
+        running = true;
+        try {
+            PENDING.forEach( ( world, actions ) -> {
+                if( actions.isEmpty() ) return;
+                
+                final Iterator<DeferredAction> iterator = actions.iterator();
+                while( iterator.hasNext() ) {
+                    final DeferredAction action = iterator.next();
+                    if( action.isOrphaned() ) {
+                        iterator.remove();
+                        droppedCount++;
+                    }
+                    else if( action.attempt() ) {
+                        iterator.remove();
+                        executedCount++;
+                    }
+                    else if( action.isExpired() ) {
+                        iterator.remove();
+                        expiredCount++;
+                    }
+                }
+                pendingCount += actions.size();
+            } );
+        }
+        finally {
+            running = false;
+        }
+        releaseHeldBack();
+    }
+    
+    /** Finishes all pending actions in every world right away. Called when the server begins shutting down. */
+    static void finishAll() {
+        running = true;
+        try {
+            PENDING.forEach( ( world, actions ) -> finish( actions ) );
+        }
+        finally {
+            running = false;
+        }
+        releaseHeldBack();
+    }
+    
+    /** Finishes all pending actions in the world right away. Called when the world unloads. */
+    static void finish( IWorld world ) {
+        final List<DeferredAction> actions = PENDING.getIfPresent( world );
+        if( actions == null ) return;
+        running = true;
+        try {
+            finish( actions );
+        }
+        finally {
+            running = false;
+        }
+        releaseHeldBack();
+    }
+    
+    /** Queues any actions that were held back while the queue was being worked through. */
+    private static void releaseHeldBack() {
+        if( HELD_BACK.isEmpty() ) return;
+        final List<Runnable> held = new ArrayList<>( HELD_BACK );
+        HELD_BACK.clear();
+        held.forEach( Runnable::run );
+    }
+    
+    /** Finishes and removes all actions in the list. */
+    private static void finish( List<DeferredAction> actions ) {
+        for( DeferredAction action : actions ) {
+            if( !action.isOrphaned() && action.finish() ) {
+                executedCount++;
+            }
+            else {
+                droppedCount++;
+            }
+        }
+        pendingCount = Math.max( 0, pendingCount - actions.size() );
+        actions.clear();
+    }
+    
+    /** @return Returns a line describing the actions queued so far and what happened to them. */
+    public static String getReport() {
+        return String.format( "%d pending, %d queued, %d executed, %d dropped, %d expired",
+                pendingCount, queuedCount, executedCount, droppedCount, expiredCount );
+    }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+package fathertoast.specialai.ai;
+
+import fathertoast.specialai.config.Config;
+import fathertoast.specialai.util.PerWorld;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.MobEntity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.world.server.ServerWorld;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Spreads out the AI initialization of mobs that join the world in bursts, such as when many chunks load at once.
+ * <p>
+ * Mobs that join away from players are queued, and the queue is worked through at the start of each world tick,
+ * nearest to a player first, within the configured count and time limits. Any queued mob that is within the near range
+ * of a player is always initialized at the start of the tick, so no mob runs its AI near a player without being set up.
+ */
+public final class DeferredInitQueue {
+    /** The mobs waiting to be initialized in each world. */
+    private static final PerWorld<Set<MobEntity>> PENDING = new PerWorld<>( world -> new LinkedHashSet<>() );
+    
+    /** @return Queues the mob for initialization and returns true, or returns false if it should be initialized right away. */
+    static boolean tryDefer( MobEntity entity ) {
+        if( !Config.GENERAL.PERFORMANCE.deferInit.get() || !(entity.level instanceof ServerWorld) ) return false;
+        
+        final double nearRange = Config.GENERAL.PERFORMANCE.deferInitNearRange.get();
+        if( getDistanceSqrToNearestPlayer( entity ) <= nearRange * nearRange ) return false;
+        
+        PENDING.get( (ServerWorld) entity.level ).add( entity );
+        return true;
+    }
+    
+    /** Removes the entity from the queue, if it is waiting. Called when the entity is removed from its world or its spawn is canceled. */
+    static void cancel( Entity entity ) {
+        final Set<MobEntity> pending = PENDING.getIfPresent( entity.level );
+        if( pending != null ) pending.remove( entity );
+    }
+    
+    /** Called at the start of each world tick, before any entities update, to initialize waiting mobs. */
+    static void process( ServerWorld world ) {
+        final Set<MobEntity> pending = PENDING.getIfPresent( world );
+        if( pending == null || pending.isEmpty() ) return;
+        
+        // Sort the waiting mobs nearest-first
+        final List<QueuedMob> queue = new ArrayList<>( pending.size() );
+        for( MobEntity entity : pending ) {
+            queue.add( new QueuedMob( entity, getDistanceSqrToNearestPlayer( entity ) ) );
+        }
+        queue.sort( Comparator.comparingDouble( queued -> queued.DISTANCE_SQR ) );
+        
+        final double nearRange = Config.GENERAL.PERFORMANCE.deferInitNearRange.get();
+        final double nearRangeSqr = nearRange * nearRange;
+        final int maxCount = Config.GENERAL.PERFORMANCE.deferInitCount.get();
+        final double maxTime = Config.GENERAL.PERFORMANCE.deferInitTime.get();
+        final long deadline = System.nanoTime() + (long) (maxTime * 1_000_000.0);
+        
+        int count = 0;
+        for( QueuedMob queued : queue ) {
+            // Mobs near players can't wait; past them, stop once either limit is reached
+            if( queued.DISTANCE_SQR > nearRangeSqr && (count >= maxCount || maxTime > 0.0 && System.nanoTime() >= deadline) ) {
+                break;
+            }
+            pending.remove( queued.MOB );
+            // Also make sure the mob really joined, in case its spawn was canceled after it was queued
+            if( queued.MOB.isAlive() && queued.MOB.level == world && world.getEntity( queued.MOB.getId() ) == queued.MOB ) {
+                AIManager.initializeSpecialAI( queued.MOB );
+                count++;
+            }
+        }
+    }
+    
+    /** @return Returns the squared distance from the entity to the nearest player in its world, or infinity if there are none. */
+    private static double getDistanceSqrToNearestPlayer( Entity entity ) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for( PlayerEntity player : entity.level.players() ) {
+            final double distanceSqr = player.distanceToSqr( entity );
+            if( distanceSqr < nearest ) nearest = distanceSqr;
+        }
+        return nearest;
+    }
+    
+    /** A waiting mob and its squared distance from the nearest player at the start of this tick. */
+    private static class QueuedMob {
+        final MobEntity MOB;
+        final double DISTANCE_SQR;
+        
+        QueuedMob( MobEntity mob, double distanceSqr ) {
+            MOB = mob;
+            DISTANCE_SQR = distanceSqr;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,146 @@
+package fathertoast.specialai.ai;
+
+import fathertoast.specialai.util.PerWorld;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.entity.MobEntity;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.world.server.ServerWorld;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Keeps an index of the mobs in each world, grouped by class and then by chunk column, so that a dying mob can
+ * quickly find the mobs that may come to its aid without searching every entity around it.
+ * <p>
+ * Mobs are added as they join the world, moved as they cross into new chunks, and removed as they leave the world.
+ * Any mob found to no longer be in the world (for example, if another mod stopped it from joining) is skipped and dropped.
+ */
+public final class GroupAlertRegistry {
+    /** The group index for each world. */
+    private static final PerWorld<Index> INDEXES = new PerWorld<>( world -> new Index() );
+    
+    /** Adds a mob that just joined the world to the index. */
+    static void add( MobEntity entity ) {
+        if( entity.level instanceof ServerWorld ) {
+            INDEXES.get( (ServerWorld) entity.level ).add( entity, getColumn( entity ) );
+        }
+    }
+    
+    /** Moves an indexed mob to a new chunk column. Called when the entity enters a new chunk. */
+    static void move( MobEntity entity, int chunkX, int chunkZ ) {
+        final Index index = INDEXES.getIfPresent( entity.level );
+        if( index != null ) index.move( entity, ChunkPos.asLong( chunkX, chunkZ ) );
+    }
+    
+    /** Removes a mob from the index. Called when the entity is removed from its world. */
+    static void remove( MobEntity entity ) {
+        final Index index = INDEXES.getIfPresent( entity.level );
+        if( index != null ) index.remove( entity );
+    }
+    
+    /**
+     * Performs an action for each indexed mob of the given class (or any of its subclasses) whose bounding box
+     * intersects the given box. This matches the mobs that would be found by an entity search for that class.
+     */
+    static void forEachInGroup( ServerWorld world, Class<? extends MobEntity> groupClass, AxisAlignedBB box, Consumer<MobEntity> action ) {
+        final Index index = INDEXES.getIfPresent( world );
+        if( index == null ) return;
+        
+        // Mobs are indexed by position, so pad the search to catch any whose bounding box reaches in from outside
+        final int minX = MathHelper.floor( box.minX - 2.0 ) >> 4;
+        final int maxX = MathHelper.floor( box.maxX + 2.0 ) >> 4;
+        final int minZ = MathHelper.floor( box.minZ - 2.0 ) >> 4;
+        final int maxZ = MathHelper.floor( box.maxZ + 2.0 ) >> 4;
+        List<MobEntity> stale = null;
+        for( Map.Entry<Class<?>, Long2ObjectMap<List<MobEntity>>> group : index.GROUPS.entrySet() ) {
+            if( !groupClass.isAssignableFrom( group.getKey() ) ) continue;
+            
+            final Long2ObjectMap<List<MobEntity>> columns = group.getValue();
+            for( int x = minX; x <= maxX; x++ ) {
+                for( int z = minZ; z <= maxZ; z++ ) {
+                    final List<MobEntity> members = columns.get( ChunkPos.asLong( x, z ) );
+                    if( members == null ) continue;
+                    for( MobEntity member : members ) {
+                        if( !isInWorld( world, member ) ) {
+                            if( stale == null ) stale = new ArrayList<>();
+                            stale.add( member );
+                        }
+                        else if( member.getBoundingBox().intersects( box ) ) action.accept( member );
+                    }
+                }
+            }
+        }
+        if( stale != null ) stale.forEach( index::remove );
+    }
+    
+    /** @return Returns true if the mob is still in the world, and not just left behind in the index. */
+    private static boolean isInWorld( ServerWorld world, MobEntity entity ) {
+        return !entity.removed && world.getEntity( entity.getId() ) == entity;
+    }
+    
+    /** @return Returns the key of the chunk column the entity is currently in. */
+    private static long getColumn( MobEntity entity ) {
+        return ChunkPos.asLong( MathHelper.floor( entity.getX() ) >> 4, MathHelper.floor( entity.getZ() ) >> 4 );
+    }
+    
+    /** The group index for a single world. */
+    private static class Index {
+        /** The indexed mobs of each class, by chunk column. */
+        final Map<Class<?>, Long2ObjectMap<List<MobEntity>>> GROUPS = new HashMap<>();
+        /** The chunk column each indexed mob is filed under. */
+        final Map<MobEntity, Long> COLUMNS = new HashMap<>();
+        
+        void add( MobEntity entity, long column ) {
+            if( COLUMNS.containsKey( entity ) ) {
+                move( entity, column );
+                return;
+            }
+            COLUMNS.put( entity, column );
+            getMembers( entity.getClass(), column, true ).add( entity );
+        }
+        
+        void move( MobEntity entity, long column ) {
+            final Long oldColumn = COLUMNS.get( entity );
+            if( oldColumn == null || oldColumn == column ) return;
+            
+            remove( entity );
+            add( entity, column );
+        }
+        
+        void remove( MobEntity entity ) {
+            final Long column = COLUMNS.remove( entity );
+            if( column == null ) return;
+            
+            final List<MobEntity> members = getMembers( entity.getClass(), column, false );
+            if( members != null ) {
+                members.remove( entity );
+                if( members.isEmpty() ) GROUPS.get( entity.getClass() ).remove( (long) column );
+            }
+        }
+        
+        /** @return Returns the list of mobs of a class in a chunk column, optionally creating it if it does not exist. */
+        @Nullable
+        List<MobEntity> getMembers( Class<?> groupClass, long column, boolean create ) {
+            Long2ObjectMap<List<MobEntity>> columns = GROUPS.get( groupClass );
+            if( columns == null ) {
+                if( !create ) return null;
+                columns = new Long2ObjectOpenHashMap<>();
+                GROUPS.put( groupClass, columns );
+            }
+            List<MobEntity> members = columns.get( column );
+            if( members == null && create ) {
+                members = new ArrayList<>();
+                columns.put( column, members );
+            }
+            return members;
+        }
+    }
+}
\ No newline at end of file
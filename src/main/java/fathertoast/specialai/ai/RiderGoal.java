@@ -13,7 +13,6 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
-import java.util.function.Supplier;
 
 /**
  * This AI causes the entity to search for and mount valid entities.
@@ -36,6 +35,8 @@ public class RiderGoal extends Goal {
     private int checkTime;
     /** Ticks until the entity gives up trying to reach the mount. */
     private int giveUpDelay;
+    /** Slows down or stops searching when no player is near. */
+    private final ActivityTier activityTier;
     
     /**
      * @param entity The owner of this AI.
@@ -44,13 +45,14 @@ public class RiderGoal extends Goal {
     public RiderGoal( MobEntity entity, boolean small ) {
         mob = entity;
         isSmall = small;
+        activityTier = new ActivityTier( entity );
         setFlags( EnumSet.of( Flag.MOVE, Flag.LOOK ) );
     }
     
     /** @return Returns true if this AI can be activated. */
     @Override
     public boolean canUse() {
-        if( !mob.isPassenger() && ++checkTime > 50 ) {
+        if( !mob.isPassenger() && ++checkTime > activityTier.stretch( 50 ) && !activityTier.isAsleep() ) {
             checkTime = 0;
             return findNearbyMount();
         }
@@ -80,7 +82,7 @@ public class RiderGoal extends Goal {
         mob.getLookControl().setLookAt( targetMount, 30.0F, 30.0F );
         
         if( !targetMount.isVehicle() && mob.distanceToSqr( targetMount ) <= mob.getBbWidth() * mob.getBbWidth() * 4.0F + targetMount.getBbWidth() ) {
-            AIManager.queue( new StartRiding( mob, targetMount ) );
+            AIManager.queue( mob.level, new StartRiding( mob, targetMount ) );
             targetMount = null;
         }
         else if( mob.getNavigation().isDone() ) {
@@ -167,20 +169,21 @@ public class RiderGoal extends Goal {
      * Used to connect a rider to its target mount, so it can start riding.
      * This strategy is used because mounting during the AI tick can potentially cause issues.
      */
-    private static class StartRiding implements Supplier<Boolean> {
+    private static class StartRiding extends DeferredAction {
         /** The entity that wants to ride. */
         private final MobEntity RIDER;
         /** The target entity to be ridden. */
         private final LivingEntity MOUNT;
         
         StartRiding( MobEntity rider, LivingEntity mount ) {
+            super( rider, mount );
             RIDER = rider;
             MOUNT = mount;
         }
         
         /** Called to actually start riding. */
         @Override
-        public Boolean get() {
+        protected boolean run() {
             RIDER.startRiding( MOUNT, true );
             return true;
         }
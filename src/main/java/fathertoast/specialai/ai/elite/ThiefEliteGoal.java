@@ -1,6 +1,7 @@
 package fathertoast.specialai.ai.elite;
 
 import fathertoast.specialai.ai.AIManager;
+import fathertoast.specialai.ai.DeferredAction;
 import fathertoast.specialai.config.Config;
 import net.minecraft.entity.CreatureEntity;
 import net.minecraft.entity.LivingEntity;
@@ -20,7 +21,6 @@ import net.minecraft.util.Hand;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.function.Supplier;
 
 /**
  * This AI causes an entity to steal a random item from a player, briefly turn invisible, and then just run away.
@@ -111,7 +111,7 @@ public class ThiefEliteGoal extends AbstractPathingEliteGoal {
                     if( !stolen.isEmpty() ) {
                         final ItemEntity drop = new ItemEntity( mob.level, mob.getX(), mob.getY() + 0.5, mob.getZ(), stolen );
                         drop.setPickUpDelay( 20 );
-                        AIManager.queue( new EquipToThief( mob, drop ) );
+                        AIManager.queue( mob.level, new EquipToThief( mob, drop ) );
                         mob.level.addFreshEntity( drop );
                     }
                 }
@@ -217,20 +217,21 @@ public class ThiefEliteGoal extends AbstractPathingEliteGoal {
      * Used to connect a stolen item to the thief that stole it, so the item can be equipped to the thief.
      * This strategy is used because changing entity equipment during the AI tick can crash the game.
      */
-    private static class EquipToThief implements Supplier<Boolean> {
+    private static class EquipToThief extends DeferredAction {
         /** The thief that stole the item. */
         private final MobEntity THIEF;
         /** The item stolen. */
         private final ItemEntity ITEM;
         
         EquipToThief( MobEntity entity, ItemEntity item ) {
+            super( entity, item );
             THIEF = entity;
             ITEM = item;
         }
         
         /** Called to finalize the item stealing process. Equips the item to the thief and destroys the dropped item. */
         @Override
-        public Boolean get() {
+        protected boolean run() {
             THIEF.setItemSlot( EquipmentSlotType.MAINHAND, ITEM.getItem() );
             THIEF.setGuaranteedDrop( EquipmentSlotType.MAINHAND );
             THIEF.setPersistenceRequired();
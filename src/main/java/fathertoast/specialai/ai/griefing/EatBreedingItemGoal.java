@@ -1,5 +1,6 @@
 package fathertoast.specialai.ai.griefing;
 
+import fathertoast.specialai.ai.ActivityTier;
 import fathertoast.specialai.config.Config;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.ai.goal.Goal;
@@ -36,19 +37,23 @@ public class EatBreedingItemGoal extends Goal {
     private int cooldown;
     /** Ticks until the entity gives up. */
     private int giveUpDelay;
+    /** Slows down or stops searching when no player is near. */
+    private final ActivityTier activityTier;
     
     /**
      * @param entity The owner of this AI.
      */
     public EatBreedingItemGoal( AnimalEntity entity ) {
         mob = entity;
+        activityTier = new ActivityTier( entity );
         setFlags( EnumSet.of( Flag.MOVE, Flag.LOOK ) );
     }
     
     /** @return Returns true if this AI can be activated. */
     @Override
     public boolean canUse() {
-        if( !mob.isPassenger() && ForgeEventFactory.getMobGriefingEvent( mob.level, mob ) && ++checkTime > 30 ) {
+        if( !mob.isPassenger() && ForgeEventFactory.getMobGriefingEvent( mob.level, mob ) &&
+                ++checkTime > activityTier.stretch( 30 ) && !activityTier.isAsleep() ) {
             checkTime = 0;
             return findNearbyFood();
         }
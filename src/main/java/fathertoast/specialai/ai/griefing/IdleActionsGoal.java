@@ -1,18 +1,17 @@
 package fathertoast.specialai.ai.griefing;
 
 import fathertoast.crust.api.lib.LevelEventHelper;
-import fathertoast.crust.api.lib.NBTHelper;
 import fathertoast.specialai.SpecialAI;
-import fathertoast.specialai.ai.AIManager;
+import fathertoast.specialai.ai.ActivityTier;
 import fathertoast.specialai.config.Config;
+import fathertoast.specialai.util.BlockDamageBroadcaster;
 import fathertoast.specialai.util.BlockHelper;
 import fathertoast.specialai.util.SpecialAIFakePlayer;
+import it.unimi.dsi.fastutil.longs.LongList;
 import net.minecraft.block.*;
-import net.minecraft.block.material.Material;
 import net.minecraft.entity.MobEntity;
 import net.minecraft.entity.ai.goal.Goal;
 import net.minecraft.entity.monster.CreeperEntity;
-import net.minecraft.nbt.CompoundNBT;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.Hand;
 import net.minecraft.util.math.BlockPos;
@@ -26,6 +25,7 @@ import net.minecraftforge.event.ForgeEventFactory;
 import net.minecraftforge.registries.ForgeRegistries;
 
 import java.util.EnumSet;
+import java.util.concurrent.Future;
 
 /**
  * This AI causes the entity to seek out blocks to either destroy or interact with (usually right click),
@@ -33,7 +33,17 @@ import java.util.EnumSet;
  */
 public class IdleActionsGoal extends Goal {
     /** Differentiates between the different actions that can be taken by this AI. */
-    private enum Activity { NONE, HIDING, GRIEFING, FIDDLING }
+    enum Activity { NONE, HIDING, GRIEFING, FIDDLING }
+    
+    /** Allows the user to choose how mobs search for blocks to target through the config file. */
+    public enum ScanMode {
+        /** Each scan checks random blocks in range, favoring those closer to the mob. */
+        RANDOM,
+        /** Each scan continues on from the last, checking every block in range once (closest first) before starting over. */
+        CURSOR,
+        /** Each scan only checks blocks listed in the shared index of possible targets, closest first. */
+        INDEXED
+    }
     
     /** The owner of this AI. */
     protected final MobEntity mob;
@@ -43,6 +53,10 @@ public class IdleActionsGoal extends Goal {
     private final boolean griefingEnabled;
     /** Whether this should perform idle fiddling. */
     private final boolean fiddlingEnabled;
+    /** Slows down or stops searching when no player is near. */
+    private final ActivityTier activityTier;
+    /** The idle stats for the entity's world. Looked up the first time something is counted. */
+    private IdleStats.WorldStats stats;
     
     /** The current action being performed. */
     private Activity currentActivity = Activity.NONE;
@@ -51,12 +65,22 @@ public class IdleActionsGoal extends Goal {
     private BlockPos targetPos = BlockPos.ZERO;
     /** The block to attack. */
     private BlockState targetBlock;
+    /** This entity's claim on the target, if claims are enabled. */
+    private IdleTargetClaims.Claim claim;
     /** The ray trace resulting from sight check, if successful. */
     private BlockRayTraceResult targetHitResult;
     /** True if the target is in the entity's range and can be seen. */
     private boolean canReach;
+    /** The first block in the way of the last quick sight check. */
+    private final BlockPos.Mutable sightPos = new BlockPos.Mutable();
     /** Ticks until the entity can check line of sight again. */
     private int sightCounter;
+    /** True if the entity's last scan was cut short by the scan budget. */
+    private boolean scanCutShort;
+    /** The index in the scan order of the next block to check, when using the cursor scan mode. */
+    private int scanCursor;
+    /** The search waiting on a worker thread, if any. */
+    private Future<LongList> pendingSearch;
     /** Ticks until the entity gives up. */
     private int giveUpDelay;
     
@@ -73,8 +97,6 @@ public class IdleActionsGoal extends Goal {
     
     /** Used to prevent mobs from spamming right click on things. */
     private int fiddleDelay;
-    /** The entity wrapped as a player. Required to perform the 'right-click block' action. */
-    private SpecialAIFakePlayer fiddleWrapper;
     
     /**
      * @param entity   The owner of this AI.
@@ -87,6 +109,7 @@ public class IdleActionsGoal extends Goal {
         hidingEnabled = hiding;
         griefingEnabled = griefing;
         fiddlingEnabled = fiddling;
+        activityTier = new ActivityTier( entity );
         setFlags( EnumSet.of( Flag.MOVE, Flag.LOOK ) );
     }
     
@@ -104,25 +127,98 @@ public class IdleActionsGoal extends Goal {
         fiddleDelay--;
         sightCounter--;
         if( sightCounter <= 0 ) {
-            sightCounter = Config.IDLE.GENERAL.scanDelay.get();
+            sightCounter = activityTier.stretch( Config.IDLE.GENERAL.scanDelay.get() );
+            // Don't search at all while no player is around
+            if( activityTier.isAsleep() ) return false;
             
-            // Try picking random blocks; the strategy used favors blocks closer to the mob
             final int rangeXZ = Config.IDLE.GENERAL.rangeHorizontal.get();
             final int rangeY = Config.IDLE.GENERAL.rangeVertical.get();
             BlockPos.Mutable pos = new BlockPos.Mutable();
-            for( int i = 0; i < Config.IDLE.GENERAL.scanCount.get() && AIManager.canScan(); i++ ) {
+            final int activities = IdleTargetIndex.getActivities( hidingEnabled, griefingEnabled, fiddlingEnabled && fiddleDelay <= 0 );
+            if( IdleScanWorkers.isEnabled() && mob.level instanceof ServerWorld ) {
+                if( pendingSearch == null ) {
+                    pendingSearch = IdleScanWorkers.submit( (ServerWorld) mob.level, mob.blockPosition(), rangeXZ, rangeY, activities );
+                }
+                if( pendingSearch != null ) {
+                    // Check back each tick until the search is done; scans are only spent once its results are used
+                    if( !pendingSearch.isDone() ) {
+                        sightCounter = 1;
+                        return false;
+                    }
+                    final int scans = requestScans();
+                    if( scans <= 0 ) return false;
+                    
+                    // Blocks found off-thread could have changed since, so check each fully before targeting it
+                    final LongList candidates = IdleScanWorkers.getResult( pendingSearch );
+                    pendingSearch = null;
+                    return tryCandidates( candidates, scans, pos );
+                }
+                // Otherwise, the workers are too busy - just search here instead
+            }
+            final int scans = requestScans();
+            
+            final ScanMode scanMode = Config.IDLE.GENERAL.scanMode.get();
+            if( scanMode == ScanMode.INDEXED && mob.level instanceof ServerWorld ) {
+                return tryCandidates( IdleTargetIndex.findCandidates( (ServerWorld) mob.level, mob.blockPosition(),
+                        rangeXZ, rangeY, activities ), scans, pos );
+            }
+            if( scanMode == ScanMode.CURSOR ) {
+                // Walk through the blocks in range, closest first, picking up where the last scan left off
+                final IdleScanOrder order = IdleScanOrder.get( rangeXZ, rangeY );
+                final BlockPos origin = mob.blockPosition();
+                for( int i = Math.min( scans, order.size() ); i > 0; i-- ) {
+                    if( scanCursor >= order.size() ) scanCursor = 0;
+                    order.setPos( pos, origin, scanCursor++ );
+                    if( mayContainTargets( pos, activities ) && tryTargetBlock( pos ) ) return true;
+                }
+                return false;
+            }
+            
+            // Try picking random blocks; the strategy used favors blocks closer to the mob
+            for( int i = 0; i < scans; i++ ) {
                 pos.set(
                         mob.blockPosition().getX() + mob.getRandom().nextInt( rangeXZ ) - mob.getRandom().nextInt( rangeXZ ),
                         mob.blockPosition().getY() + mob.getRandom().nextInt( rangeY ) - mob.getRandom().nextInt( rangeY ),
                         mob.blockPosition().getZ() + mob.getRandom().nextInt( rangeXZ ) - mob.getRandom().nextInt( rangeXZ )
                 );
-                if( tryTargetBlock( pos ) ) return true;
+                if( mayContainTargets( pos, activities ) && tryTargetBlock( pos ) ) return true;
             }
         }
         // No valid block was found
         return false;
     }
     
+    /** @return Requests scans from the scan budget and returns the number granted. If cut short, sets up a retry next tick. */
+    private int requestScans() {
+        final int scansWanted = Config.IDLE.GENERAL.scanCount.get();
+        final int scans = IdleScanScheduler.requestScans( mob, scansWanted, scanCutShort );
+        scanCutShort = scans < scansWanted;
+        if( scanCutShort ) sightCounter = 1;
+        return scans;
+    }
+    
+    /**
+     * Checks possible targets, closest first, rotating past any that keep failing so that the rest are reached too.
+     *
+     * @param candidates The packed positions of the blocks that might be targets, sorted closest first.
+     * @param scans      The number of blocks that may be checked.
+     * @return Returns true if a target was picked.
+     */
+    private boolean tryCandidates( LongList candidates, int scans, BlockPos.Mutable pos ) {
+        final int count = candidates.size();
+        if( scanCursor >= count ) scanCursor = 0;
+        for( int i = Math.min( scans, count ); i > 0; i-- ) {
+            final long candidate = candidates.getLong( scanCursor );
+            pos.set( BlockPos.getX( candidate ), BlockPos.getY( candidate ), BlockPos.getZ( candidate ) );
+            if( ++scanCursor >= count ) scanCursor = 0;
+            if( tryTargetBlock( pos ) ) {
+                scanCursor = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /** @return Called each update while active and returns true if this AI can remain active. */
     @Override
     public boolean canContinueToUse() {
@@ -131,16 +227,22 @@ public class IdleActionsGoal extends Goal {
             return false;
         }
         
+        final boolean canContinue;
         switch( currentActivity ) {
             case FIDDLING:
-                return canContinueFiddling();
+                canContinue = canContinueFiddling();
+                break;
             case GRIEFING:
-                return canContinueGriefing();
+                canContinue = canContinueGriefing();
+                break;
             case HIDING:
-                return canContinueHiding();
+                canContinue = canContinueHiding();
+                break;
             default:
                 return false;
         }
+        if( !canContinue && giveUpDelay >= 400 ) count( currentActivity, IdleStats.Counter.GAVE_UP );
+        return canContinue;
     }
     
     private boolean canContinueHiding() { return giveUpDelay < 400 && BlockHelper.canHideMob( mob.level, targetPos ); }
@@ -192,6 +294,7 @@ public class IdleActionsGoal extends Goal {
             default:
         }
         currentActivity = Activity.NONE;
+        releaseClaim();
     }
     
     /** Called when this AI is deactivated while in hiding mode. */
@@ -199,13 +302,14 @@ public class IdleActionsGoal extends Goal {
     
     /** Called when this AI is deactivated while in griefing mode. */
     private void stopGriefing() {
+        // Only clear the damage shown if this entity has sent any
+        if( !madCreeper() && lastBlockDamage >= 0 ) {
+            BlockDamageBroadcaster.send( mob.level, mob.getId(), targetPos, -1 );
+        }
+        
         hitCounter = 0;
         blockDamage = 0.0F;
         lastBlockDamage = -1;
-        
-        if( !madCreeper() ) {
-            mob.level.destroyBlockProgress( mob.getId(), targetPos, -1 );
-        }
     }
     
     /** Called when this AI is deactivated while in fiddling mode. */
@@ -215,6 +319,7 @@ public class IdleActionsGoal extends Goal {
     @Override
     public void tick() {
         giveUpDelay++;
+        if( claim != null ) claim.refresh( mob, mob.level.getGameTime() );
         mob.getLookControl().setLookAt( targetPos.getX() + 0.5, targetPos.getY() + 0.5, targetPos.getZ() + 0.5,
                 30.0F, 30.0F );
         
@@ -243,6 +348,7 @@ public class IdleActionsGoal extends Goal {
             }
             
             if( giveUpDelay > 400 ) {
+                count( currentActivity, IdleStats.Counter.GAVE_UP );
                 targetBlock = null;
             }
             else if( mob.getNavigation().isDone() ) {
@@ -256,6 +362,7 @@ public class IdleActionsGoal extends Goal {
         // Try to hide in the block
         if( BlockHelper.canHideMob( mob.level, targetPos ) ) {
             BlockHelper.hideMob( mob.level, targetPos, mob );
+            count( Activity.HIDING, IdleStats.Counter.INTERACTIONS );
         }
         targetBlock = null;
     }
@@ -299,9 +406,12 @@ public class IdleActionsGoal extends Goal {
         }
         
         // Perform block breaking
-        blockDamage += BlockHelper.getDestroyProgress( targetBlock, mob, world, targetPos ) * Config.IDLE.GRIEFING.breakSpeed.get();
+        final float progress = (float) (BlockHelper.getDestroyProgress( targetBlock, mob, world, targetPos ) * Config.IDLE.GRIEFING.breakSpeed.get());
+        if( claim != null ) blockDamage = claim.addDamage( progress );
+        else blockDamage += progress;
         if( blockDamage >= 1.0F ) {
             // Block is broken
+            count( Activity.GRIEFING, IdleStats.Counter.BROKEN );
             // Handle special cases
             if( targetBlock.getBlock() == Blocks.FARMLAND ) {
                 world.setBlock( targetPos, Blocks.DIRT.defaultBlockState(), 3 );
@@ -329,10 +439,10 @@ public class IdleActionsGoal extends Goal {
             targetBlock = null;
         }
         
-        // Update block damage
+        // Update block damage; mobs sharing a target only show the damage once
         final int damage = (int) Math.ceil( blockDamage * 10.0F ) - 1;
-        if( damage != lastBlockDamage ) {
-            mob.level.destroyBlockProgress( mob.getId(), targetPos, damage );
+        if( damage != lastBlockDamage && (claim == null || claim.isLeader( mob )) ) {
+            BlockDamageBroadcaster.send( mob.level, mob.getId(), targetPos, damage );
             lastBlockDamage = damage;
         }
     }
@@ -344,33 +454,37 @@ public class IdleActionsGoal extends Goal {
             if( targetBlock.getBlock() instanceof TNTBlock ) {
                 targetBlock.getBlock().catchFire( targetBlock, mob.level, targetPos, null, mob );
                 mob.level.removeBlock( targetPos, false );
+                count( Activity.FIDDLING, IdleStats.Counter.INTERACTIONS );
             }
             // Otherwise, interact like a player right-clicking the block
             else {
-                if( fiddleWrapper == null ) {
-                    // Surrounded with try/catch in case the fake player creation causes issues
-                    try {
-                        fiddleWrapper = new SpecialAIFakePlayer( mob );
-                    }
-                    catch( Exception ex ) {
-                        SpecialAI.LOG.error( "Failed to create fake player wrapper for entity '{}'",
-                                mob.getType().getRegistryName(), ex );
-                        // Forcibly disable fiddling for this entity until reload; also disables special cases, but oh well
-                        stopFiddling();
-                        fiddleDelay = Integer.MAX_VALUE;
-                        currentActivity = Activity.NONE;
-                    }
+                SpecialAIFakePlayer fakePlayer = null;
+                // Surrounded with try/catch in case the fake player creation causes issues
+                try {
+                    fakePlayer = SpecialAIFakePlayer.acquire( mob );
+                }
+                catch( Exception ex ) {
+                    SpecialAI.LOG.error( "Failed to create fake player wrapper for entity '{}'",
+                            mob.getType().getRegistryName(), ex );
+                    // Forcibly disable fiddling for this entity until reload; also disables special cases, but oh well
+                    stopFiddling();
+                    fiddleDelay = Integer.MAX_VALUE;
+                    currentActivity = Activity.NONE;
                 }
-                if( fiddleWrapper != null ) {
+                if( fakePlayer != null ) {
                     // Surrounded with try/catch in case the fake player interaction causes issues
                     try {
-                        fiddleWrapper.updateFakePlayerState();
-                        targetBlock.use( mob.level, fiddleWrapper, Hand.MAIN_HAND, targetHitResult );
-                        fiddleWrapper.updateWrappedEntityState();
+                        fakePlayer.updateFakePlayerState();
+                        targetBlock.use( mob.level, fakePlayer, Hand.MAIN_HAND, targetHitResult );
+                        count( Activity.FIDDLING, IdleStats.Counter.INTERACTIONS );
+                        fakePlayer.updateWrappedEntityState();
                     }
                     catch( Exception ex ) {
                         SpecialAI.LOG.warn( "Failed to fiddle with block '{}'", ForgeRegistries.BLOCKS.getKey( targetBlock.getBlock() ), ex );
                     }
+                    finally {
+                        SpecialAIFakePlayer.release( fakePlayer );
+                    }
                 }
             }
         }
@@ -412,6 +526,14 @@ public class IdleActionsGoal extends Goal {
      * @return Returns true if there is an unobstructed view of the (possibly new) target.
      */
     private boolean checkSight( final Vector3d posVec, double x, double y, double z ) {
+        // Quickly find the first block in the way, and only do the full ray trace if it could end up successful
+        count( currentActivity, IdleStats.Counter.SIGHT_CHECKS );
+        final long obstruction = IdleLineOfSight.findObstruction( mob, posVec, x, y, z );
+        if( obstruction == IdleLineOfSight.CLEAR ) sightPos.set( x, y, z );
+        else sightPos.set( BlockPos.getX( obstruction ), BlockPos.getY( obstruction ), BlockPos.getZ( obstruction ) );
+        if( !targetPos.equals( sightPos ) && !mayTargetObstructingBlock( sightPos ) ) return false;
+        
+        count( currentActivity, IdleStats.Counter.RAY_TRACES );
         final Vector3d targetVec = new Vector3d( x, y, z );
         BlockRayTraceResult hit = mob.level.clip( new RayTraceContext( posVec, targetVec,
                 RayTraceContext.BlockMode.COLLIDER, RayTraceContext.FluidMode.NONE, mob ) );
@@ -429,6 +551,21 @@ public class IdleActionsGoal extends Goal {
         return false;
     }
     
+    /** @return Returns false if a block in the way of a sight check can't become the new target, based on the block alone. */
+    private boolean mayTargetObstructingBlock( BlockPos pos ) {
+        BlockState block = mob.level.getBlockState( pos );
+        switch( currentActivity ) {
+            case FIDDLING:
+                return isValidTargetForFiddling( block );
+            case GRIEFING:
+                return isValidTargetForGriefing( block, pos );
+            case HIDING:
+                return isValidTargetForHiding( block );
+            default:
+                return false;
+        }
+    }
+    
     /** @return Called when a sight check hits blocks other than the target. Changes the target to the hit block if possible. */
     private boolean tryTargetObstructingBlock( BlockRayTraceResult hit ) {
         BlockState block = mob.level.getBlockState( hit.getBlockPos() );
@@ -444,6 +581,11 @@ public class IdleActionsGoal extends Goal {
         }
     }
     
+    /** @return Returns false if the chunk section at the position is known to hold no possible targets, so its blocks can be skipped. */
+    private boolean mayContainTargets( BlockPos pos, int activities ) {
+        return !(mob.level instanceof ServerWorld) || IdleTargetIndex.mayContainTargets( (ServerWorld) mob.level, pos, activities );
+    }
+    
     /** @return Tries to target the block at a position for any of the enabled actions. Returns true if successful. */
     private boolean tryTargetBlock( BlockPos pos ) {
         BlockState block = mob.level.getBlockState( pos );
@@ -457,7 +599,9 @@ public class IdleActionsGoal extends Goal {
     
     /** @return Tries to target a block for hiding. Returns true if successful. */
     private boolean tryTargetBlockHiding( BlockState block, BlockPos pos ) {
-        if( isValidTargetForHiding( block, pos ) && BlockHelper.canHideMob( mob.level, pos ) ) {
+        count( Activity.HIDING, IdleStats.Counter.PROBED );
+        if( isValidTargetForHiding( block ) && BlockHelper.canHideMob( mob.level, pos ) && claimTarget( pos, 0 ) ) {
+            count( Activity.HIDING, IdleStats.Counter.FOUND );
             currentActivity = Activity.HIDING;
             targetPos = pos.immutable();
             targetBlock = block;
@@ -468,8 +612,11 @@ public class IdleActionsGoal extends Goal {
     
     /** @return Tries to target a block for griefing. Returns true if successful. */
     private boolean tryTargetBlockGriefing( BlockState block, BlockPos pos ) {
+        count( Activity.GRIEFING, IdleStats.Counter.PROBED );
         if( isValidTargetForGriefing( block, pos ) &&
-                BlockHelper.shouldDamage( block, mob, Config.IDLE.GRIEFING.requiresTools.get() && !madCreeper(), mob.level, pos ) ) {
+                BlockHelper.shouldDamage( block, mob, Config.IDLE.GRIEFING.requiresTools.get() && !madCreeper(), mob.level, pos ) &&
+                claimTarget( pos, madCreeper() ? 0 : Config.IDLE.GRIEFING.maxHelpers.get() ) ) {
+            count( Activity.GRIEFING, IdleStats.Counter.FOUND );
             currentActivity = Activity.GRIEFING;
             targetPos = pos.immutable();
             targetBlock = block;
@@ -480,7 +627,9 @@ public class IdleActionsGoal extends Goal {
     
     /** @return Tries to target a block for fiddling. Returns true if successful. */
     private boolean tryTargetBlockFiddling( BlockState block, BlockPos pos ) {
-        if( isValidTargetForFiddling( block ) && ForgeEventFactory.getMobGriefingEvent( mob.level, mob ) ) {
+        count( Activity.FIDDLING, IdleStats.Counter.PROBED );
+        if( isValidTargetForFiddling( block ) && ForgeEventFactory.getMobGriefingEvent( mob.level, mob ) && claimTarget( pos, 0 ) ) {
+            count( Activity.FIDDLING, IdleStats.Counter.FOUND );
             currentActivity = Activity.FIDDLING;
             targetPos = pos.immutable();
             targetBlock = block;
@@ -489,80 +638,63 @@ public class IdleActionsGoal extends Goal {
         return false;
     }
     
-    /** @return Returns true if the specified block can be targeted for hiding. */
-    private boolean isValidTargetForHiding( BlockState state, BlockPos pos ) {
-        if( Config.IDLE.HIDING.targetList.BLACKLIST.get().matches( state ) ) {
-            return false;
-        }
-        return Config.IDLE.HIDING.targetList.WHITELIST.get().matches( state );
+    /** Adds one to a counter in the idle stats for the entity's world. */
+    private void count( Activity activity, IdleStats.Counter counter ) {
+        if( stats == null ) stats = IdleStats.get( mob.level );
+        stats.add( activity, counter );
     }
     
-    /** @return Returns true if the specified block can be targeted for griefing. */
-    private boolean isValidTargetForGriefing( BlockState state, BlockPos pos ) {
-        if ( madCreeper() && !canExplodeBlock( state.getBlock() ) ) return false;
-
-        if( state.getMaterial().isLiquid() || Config.IDLE.GRIEFING.targetBlacklist.get().matches( state ) ) {
-            return false;
-        }
-        if( Config.IDLE.GRIEFING.targetLights.get() && state.getLightValue( mob.level, pos ) > 1 && !isNaturalLightBlock( state.getBlock() ) ) {
-            return true;
-        }
-        if( Config.IDLE.GRIEFING.targetBeds.get() && state.getBlock() instanceof BedBlock ) {
-            return true;
-        }
-        if( Config.IDLE.GRIEFING.targetWhitelistLootable.get().matches( state ) ) {
-            return isLootContainerTargetable( pos );
+    /**
+     * Claims a block so other entities skip it, letting go of any block previously claimed.
+     *
+     * @param maxHelpers The number of other entities allowed to share the block with whoever claimed it first.
+     * @return Returns false if the block is already claimed by too many other entities.
+     */
+    private boolean claimTarget( BlockPos pos, int maxHelpers ) {
+        if( !Config.IDLE.GENERAL.claimTargets.get() || !(mob.level instanceof ServerWorld) ) return true;
+        
+        final IdleTargetClaims.Claim newClaim = IdleTargetClaims.claim( (ServerWorld) mob.level, pos, mob, maxHelpers );
+        if( newClaim == null ) return false;
+        if( newClaim != claim ) {
+            releaseClaim();
+            claim = newClaim;
         }
-        return Config.IDLE.GRIEFING.targetWhitelist.get().matches( state );
+        return true;
     }
     
-    /** @return Returns true if the specified block can be targeted for fiddling. */
-    private boolean isValidTargetForFiddling( BlockState state ) {
-        if( Config.IDLE.FIDDLING.targetList.BLACKLIST.get().matches( state ) ) {
-            return false;
-        }
-        final Block block = state.getBlock();
-        if( Config.IDLE.FIDDLING.targetDoors.get() && state.getMaterial() != Material.METAL && state.getMaterial() != Material.HEAVY_METAL &&
-                (block instanceof DoorBlock || block instanceof TrapDoorBlock || block instanceof FenceGateBlock) ) {
-            return true;
+    /** Lets go of this entity's claim on its target, if any. */
+    private void releaseClaim() {
+        if( claim != null ) {
+            if( mob.level instanceof ServerWorld ) IdleTargetClaims.release( (ServerWorld) mob.level, claim, mob );
+            claim = null;
         }
-        if( Config.IDLE.FIDDLING.targetSwitches.get() && (block instanceof LeverBlock || block instanceof AbstractButtonBlock) ) {
-            return true;
-        }
-        return Config.IDLE.FIDDLING.targetList.WHITELIST.get().matches( state );
     }
     
-    /** @return Returns true if the block is a natural light source. */
-    private boolean isNaturalLightBlock( Block block ) {
-        // Note: 1.17+ has Glow Berries/Lichen & Amethyst Bud/Cluster
-        return block instanceof AbstractFireBlock || block instanceof OreBlock || block instanceof RedstoneOreBlock ||
-                block == Blocks.SEA_PICKLE || block == Blocks.MAGMA_BLOCK || block == Blocks.SHROOMLIGHT ||
-                // Unnatural when outside the Nether
-                World.NETHER.equals( mob.level.dimension() ) && block == Blocks.GLOWSTONE;
+    /** @return Returns true if the specified block can be targeted for hiding. */
+    private boolean isValidTargetForHiding( BlockState state ) { return IdleTargetTables.get( mob.level ).canHideIn( state ); }
+    
+    /** @return Returns true if the specified block can be targeted for griefing. */
+    private boolean isValidTargetForGriefing( BlockState state, BlockPos pos ) {
+        final IdleTargetTables targets = IdleTargetTables.get( mob.level );
+        if( madCreeper() && !targets.canExplode( state ) ) return false;
+        
+        return targets.canGrief( state ) || targets.canGriefIfLooted( state ) && isLootContainerTargetable( pos );
     }
     
+    /** @return Returns true if the specified block can be targeted for fiddling. */
+    private boolean isValidTargetForFiddling( BlockState state ) { return IdleTargetTables.get( mob.level ).canFiddle( state ); }
+    
     /**
      * @return Returns true if the specified block is not a container with a loot table tag.
-     * @see net.minecraft.tileentity.LockableLootTileEntity#tryLoadLootTable(CompoundNBT)
+     * @see BlockHelper#hasLootTable(TileEntity)
      */
-    @SuppressWarnings("JavadocReference")
     private boolean isLootContainerTargetable(BlockPos pos ) {
         TileEntity container = mob.level.getBlockEntity( pos );
         if( container == null ) return true;
         
-        return !NBTHelper.containsString( container.save( new CompoundNBT() ), "LootTable" );
+        return !BlockHelper.hasLootTable( container );
     }
     
     /** @return Returns true if the entity is a creeper and should explode instead of attacking the block. */
     private boolean madCreeper() { return Config.IDLE.GRIEFING.madCreepers.get() && mob instanceof CreeperEntity; }
-
-    /**
-     * Helper method for lazily determining if a block can be exploded or not.
-     */
-    private boolean canExplodeBlock( Block block ) {
-        //noinspection deprecation
-        final float blockResistance = block.getExplosionResistance();
-
-        return blockResistance < (float) Config.IDLE.GRIEFING.resistanceThreshold.get();
-    }
 }
\ No newline at end of file
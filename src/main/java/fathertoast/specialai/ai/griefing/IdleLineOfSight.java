@@ -0,0 +1,148 @@
+package fathertoast.specialai.ai.griefing;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.entity.MobEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.shapes.ISelectionContext;
+import net.minecraft.util.math.shapes.VoxelShape;
+import net.minecraft.util.math.shapes.VoxelShapes;
+import net.minecraft.util.math.vector.Vector3d;
+import net.minecraft.world.World;
+
+/**
+ * A cheap line of sight check for idle AI, used to rule out targets before doing a full ray trace.
+ * <p>
+ * This walks through the blocks between two points exactly as a ray trace with the "collider" block mode (and no
+ * fluids) does, and finds the same first block in the way. Unlike a ray trace, it creates no objects for each air or
+ * full block it passes; only the mob's collision context is created once per check.
+ */
+final class IdleLineOfSight {
+    /** Returned when nothing is in the way. */
+    static final long CLEAR = Long.MIN_VALUE;
+    
+    /** The position being checked by the current walk. Reused, since sight checks only happen on the server thread. */
+    private static final BlockPos.Mutable WALK_POS = new BlockPos.Mutable();
+    
+    /**
+     * @param mob  The mob looking. Its collision context is used, like a ray trace from the mob.
+     * @param from The mob's eye position.
+     * @return Returns the packed position of the first block in the way from the start point to the end point,
+     * or {@link #CLEAR} if there is none.
+     */
+    static long findObstruction( MobEntity mob, Vector3d from, double toX, double toY, double toZ ) {
+        if( from.x == toX && from.y == toY && from.z == toZ ) return CLEAR;
+        return walk( mob, from, toX, toY, toZ );
+    }
+    
+    /**
+     * Steps through each block touched by the line, in order.
+     *
+     * @see net.minecraft.world.IBlockReader#traverseBlocks(net.minecraft.util.math.RayTraceContext, java.util.function.BiFunction, java.util.function.Function)
+     */
+    @SuppressWarnings( "JavadocReference" )
+    private static long walk( MobEntity mob, Vector3d from, double toX, double toY, double toZ ) {
+        final World world = mob.level;
+        final ISelectionContext context = ISelectionContext.of( mob );
+        
+        // Stretch the line very slightly at both ends so blocks it only touches are still checked
+        final double endX = MathHelper.lerp( -1.0E-7, toX, from.x );
+        final double endY = MathHelper.lerp( -1.0E-7, toY, from.y );
+        final double endZ = MathHelper.lerp( -1.0E-7, toZ, from.z );
+        final double startX = MathHelper.lerp( -1.0E-7, from.x, toX );
+        final double startY = MathHelper.lerp( -1.0E-7, from.y, toY );
+        final double startZ = MathHelper.lerp( -1.0E-7, from.z, toZ );
+        
+        int x = MathHelper.floor( startX );
+        int y = MathHelper.floor( startY );
+        int z = MathHelper.floor( startZ );
+        if( isObstruction( world, WALK_POS.set( x, y, z ), context, from, toX, toY, toZ ) ) return WALK_POS.asLong();
+        
+        final double dX = endX - startX;
+        final double dY = endY - startY;
+        final double dZ = endZ - startZ;
+        final int stepX = MathHelper.sign( dX );
+        final int stepY = MathHelper.sign( dY );
+        final int stepZ = MathHelper.sign( dZ );
+        final double tDeltaX = stepX == 0 ? Double.MAX_VALUE : (double) stepX / dX;
+        final double tDeltaY = stepY == 0 ? Double.MAX_VALUE : (double) stepY / dY;
+        final double tDeltaZ = stepZ == 0 ? Double.MAX_VALUE : (double) stepZ / dZ;
+        double tX = tDeltaX * (stepX > 0 ? 1.0 - MathHelper.frac( startX ) : MathHelper.frac( startX ));
+        double tY = tDeltaY * (stepY > 0 ? 1.0 - MathHelper.frac( startY ) : MathHelper.frac( startY ));
+        double tZ = tDeltaZ * (stepZ > 0 ? 1.0 - MathHelper.frac( startZ ) : MathHelper.frac( startZ ));
+        
+        while( tX <= 1.0 || tY <= 1.0 || tZ <= 1.0 ) {
+            if( tX < tY ) {
+                if( tX < tZ ) {
+                    x += stepX;
+                    tX += tDeltaX;
+                }
+                else {
+                    z += stepZ;
+                    tZ += tDeltaZ;
+                }
+            }
+            else if( tY < tZ ) {
+                y += stepY;
+                tY += tDeltaY;
+            }
+            else {
+                z += stepZ;
+                tZ += tDeltaZ;
+            }
+            if( isObstruction( world, WALK_POS.set( x, y, z ), context, from, toX, toY, toZ ) ) return WALK_POS.asLong();
+        }
+        return CLEAR;
+    }
+    
+    /** @return Returns true if the block's collision shape is hit by the line. */
+    private static boolean isObstruction( World world, BlockPos pos, ISelectionContext context, Vector3d from, double toX, double toY, double toZ ) {
+        final BlockState state = world.getBlockState( pos );
+        if( state.isAir() ) return false;
+        final VoxelShape shape = state.getCollisionShape( world, pos, context );
+        if( shape.isEmpty() ) return false;
+        if( shape == VoxelShapes.block() ) return clipsFullBlock( pos, from, toX, toY, toZ );
+        
+        // Other shapes are uncommon enough to just let them check themselves
+        return shape.clip( from, new Vector3d( toX, toY, toZ ), pos ) != null;
+    }
+    
+    /**
+     * @return Returns true if the line hits the full block at the position.
+     * @see VoxelShape#clip(Vector3d, Vector3d, BlockPos)
+     */
+    private static boolean clipsFullBlock( BlockPos pos, Vector3d from, double toX, double toY, double toZ ) {
+        final double dX = toX - from.x;
+        final double dY = toY - from.y;
+        final double dZ = toZ - from.z;
+        if( dX * dX + dY * dY + dZ * dZ < 1.0E-7 ) return false;
+        
+        // Starting inside the block counts as a hit
+        final double insideX = from.x + dX * 0.001 - pos.getX();
+        final double insideY = from.y + dY * 0.001 - pos.getY();
+        final double insideZ = from.z + dZ * 0.001 - pos.getZ();
+        if( 0.0 <= insideX && insideX < 1.0 && 0.0 <= insideY && insideY < 1.0 && 0.0 <= insideZ && insideZ < 1.0 ) return true;
+        
+        // Otherwise, check the faces the line could enter through
+        final double minX = pos.getX(), minY = pos.getY(), minZ = pos.getZ();
+        return dX > 1.0E-7 && clipsFace( dX, dY, dZ, minX, minY, minZ, from.x, from.y, from.z ) ||
+                dX < -1.0E-7 && clipsFace( dX, dY, dZ, minX + 1.0, minY, minZ, from.x, from.y, from.z ) ||
+                dY > 1.0E-7 && clipsFace( dY, dZ, dX, minY, minZ, minX, from.y, from.z, from.x ) ||
+                dY < -1.0E-7 && clipsFace( dY, dZ, dX, minY + 1.0, minZ, minX, from.y, from.z, from.x ) ||
+                dZ > 1.0E-7 && clipsFace( dZ, dX, dY, minZ, minX, minY, from.z, from.x, from.y ) ||
+                dZ < -1.0E-7 && clipsFace( dZ, dX, dY, minZ + 1.0, minX, minY, from.z, from.x, from.y );
+    }
+    
+    /**
+     * @return Returns true if the line crosses a unit square face of a block, with the axes ordered so the face is
+     * perpendicular to the first.
+     * @see net.minecraft.util.math.AxisAlignedBB#clip(Iterable, Vector3d, Vector3d, BlockPos)
+     */
+    private static boolean clipsFace( double dA, double dB, double dC, double face, double minB, double minC,
+                                      double startA, double startB, double startC ) {
+        final double t = (face - startA) / dA;
+        final double b = startB + t * dB;
+        final double c = startC + t * dC;
+        return 0.0 < t && t < 1.0 && minB - 1.0E-7 < b && b < minB + 1.0 + 1.0E-7 && minC - 1.0E-7 < c && c < minC + 1.0 + 1.0E-7;
+    }
+}
\ No newline at end of file
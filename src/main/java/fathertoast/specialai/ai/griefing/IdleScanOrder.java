@@ -0,0 +1,85 @@
+package fathertoast.specialai.ai.griefing;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * The order in which a mob using the "cursor" scan mode checks the blocks within its idle scan range.
+ * <p>
+ * Every offset in range appears exactly once, ordered from most to least likely to be picked by the random scan mode,
+ * so blocks closer to the mob still come first. Offsets that are equally likely make up one 'shell' and are ordered by
+ * straight-line distance. The table only depends on the configured range, so it is shared by all mobs.
+ */
+final class IdleScanOrder {
+    /** The most recently used scan order. Almost always the only one needed, since the scan range is global. */
+    private static IdleScanOrder cached;
+    
+    /** @return Returns the scan order for the given horizontal and vertical ranges. */
+    static IdleScanOrder get( int rangeXZ, int rangeY ) {
+        IdleScanOrder order = cached;
+        if( order == null || order.RANGE_XZ != rangeXZ || order.RANGE_Y != rangeY ) {
+            order = new IdleScanOrder( rangeXZ, rangeY );
+            cached = order;
+        }
+        return order;
+    }
+    
+    /** The horizontal range this order was built for. */
+    private final int RANGE_XZ;
+    /** The vertical range this order was built for. */
+    private final int RANGE_Y;
+    /** The x, y, and z offsets of each block to check, in order. */
+    private final int[] OFFSETS;
+    
+    private IdleScanOrder( int rangeXZ, int rangeY ) {
+        RANGE_XZ = rangeXZ;
+        RANGE_Y = rangeY;
+        
+        // The random mode picks offsets from -(range - 1) to (range - 1) on each axis
+        final int sizeXZ = 2 * rangeXZ - 1;
+        final int sizeY = 2 * rangeY - 1;
+        final int count = sizeXZ * sizeXZ * sizeY;
+        final int[] dX = new int[count];
+        final int[] dY = new int[count];
+        final int[] dZ = new int[count];
+        final int[] sorted = new int[count];
+        int i = 0;
+        for( int y = 1 - rangeY; y < rangeY; y++ ) {
+            for( int x = 1 - rangeXZ; x < rangeXZ; x++ ) {
+                for( int z = 1 - rangeXZ; z < rangeXZ; z++ ) {
+                    dX[i] = x;
+                    dY[i] = y;
+                    dZ[i] = z;
+                    sorted[i] = i;
+                    i++;
+                }
+            }
+        }
+        
+        // Each axis of a random offset is the difference of two random numbers, so its chance falls off linearly
+        IntArrays.quickSort( sorted, ( a, b ) -> {
+            final long weightA = getWeight( rangeXZ, dX[a] ) * getWeight( rangeXZ, dZ[a] ) * getWeight( rangeY, dY[a] );
+            final long weightB = getWeight( rangeXZ, dX[b] ) * getWeight( rangeXZ, dZ[b] ) * getWeight( rangeY, dY[b] );
+            if( weightA != weightB ) return Long.compare( weightB, weightA );
+            return Integer.compare( dX[a] * dX[a] + dY[a] * dY[a] + dZ[a] * dZ[a], dX[b] * dX[b] + dY[b] * dY[b] + dZ[b] * dZ[b] );
+        } );
+        
+        OFFSETS = new int[count * 3];
+        for( i = 0; i < count; i++ ) {
+            OFFSETS[i * 3] = dX[sorted[i]];
+            OFFSETS[i * 3 + 1] = dY[sorted[i]];
+            OFFSETS[i * 3 + 2] = dZ[sorted[i]];
+        }
+    }
+    
+    /** @return Returns the relative chance of the random mode picking the offset on an axis with the given range. */
+    private static long getWeight( int range, int offset ) { return range - Math.abs( offset ); }
+    
+    /** @return Returns the number of blocks in one full cycle of this order. */
+    int size() { return OFFSETS.length / 3; }
+    
+    /** Sets the position to the block at the given index in this order, relative to the origin. */
+    void setPos( BlockPos.Mutable pos, BlockPos origin, int index ) {
+        pos.set( origin.getX() + OFFSETS[index * 3], origin.getY() + OFFSETS[index * 3 + 1], origin.getZ() + OFFSETS[index * 3 + 2] );
+    }
+}
\ No newline at end of file
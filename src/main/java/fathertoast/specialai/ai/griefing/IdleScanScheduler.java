@@ -0,0 +1,175 @@
+package fathertoast.specialai.ai.griefing;
+
+import fathertoast.crust.api.config.common.ConfigUtil;
+import fathertoast.specialai.SpecialAI;
+import fathertoast.specialai.config.Config;
+import fathertoast.specialai.util.PerWorld;
+import net.minecraft.entity.MobEntity;
+import net.minecraft.world.server.ServerWorld;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hands out the global idle block scan budget ("global_scan_count") fairly, rather than first-come first-served.
+ * <p>
+ * At the end of each tick, the next tick's budget is split between the worlds that scanned, with each world getting an
+ * equal share (shares a world doesn't need are passed on to the others). Within a world, each scanning mob may use an
+ * equal slice of its world's share. Mobs that get cut short retry on the next tick and are served first from a
+ * portion of the share held back for them, so idle AI keeps rotating through all mobs instead of going silent.
+ * Anything not assigned to a world is left in an overflow pool that any mob can draw from, up to its normal slice.
+ */
+public final class IdleScanScheduler {
+    /** The minimum number of ticks between warnings about the scan budget running out. */
+    private static final int WARNING_INTERVAL = 6000;
+    
+    /** The scan budget and usage for each world. */
+    private static final PerWorld<WorldBudget> BUDGETS = new PerWorld<>( world -> new WorldBudget() );
+    
+    /** The number of scans this tick not assigned to any world's share. */
+    private static int overflow = Config.IDLE.GENERAL.scanCountGlobal.get();
+    /** The number of ticks this scheduler has run for. */
+    private static long ticks;
+    /** The tick of the last warning about the scan budget running out. */
+    private static long lastWarningTick = -WARNING_INTERVAL;
+    
+    /**
+     * Requests block scans for a mob's idle AI.
+     *
+     * @param mob         The mob that wants to scan.
+     * @param wanted      The number of blocks the mob wants to scan.
+     * @param carriedOver True if the mob was cut short on its previous attempt and is retrying.
+     * @return The number of blocks the mob may scan this tick.
+     */
+    public static int requestScans( MobEntity mob, int wanted, boolean carriedOver ) {
+        if( !(mob.level instanceof ServerWorld) ) return wanted;
+        final WorldBudget budget = BUDGETS.get( (ServerWorld) mob.level );
+        
+        final int granted = Config.IDLE.GENERAL.scanCountGlobal.get() <= 0 ? wanted : budget.grant( wanted, carriedOver );
+        budget.requesters++;
+        budget.demand += wanted;
+        budget.used += granted;
+        budget.denied += wanted - granted;
+        return granted;
+    }
+    
+    /** @return Returns a line describing the scan usage during the last tick for each world that has scanned. */
+    public static List<String> getUsageReport() {
+        final List<String> report = new ArrayList<>();
+        BUDGETS.forEach( ( world, budget ) -> report.add( String.format( "%s: %d/%d scans used by %d mobs (%d denied)",
+                SpecialAI.toString( world.dimension().location() ), budget.lastUsed, budget.lastShare,
+                budget.lastRequesters, budget.lastDenied ) ) );
+        return report;
+    }
+    
+    /** Called at the end of each server tick to split the next tick's budget. */
+    public static void onServerTickEnd() {
+        ticks++;
+        final int globalBudget = Config.IDLE.GENERAL.scanCountGlobal.get();
+        
+        // Close out this tick's usage and collect the worlds that want to scan
+        final List<WorldBudget> scanning = new ArrayList<>();
+        final boolean[] anyDenied = { false };
+        BUDGETS.forEach( ( world, budget ) -> {
+            budget.endTick();
+            if( budget.lastDenied > 0 ) anyDenied[0] = true;
+            if( budget.lastDemand > 0 ) scanning.add( budget );
+        } );
+        if( anyDenied[0] && globalBudget > 0 && ticks - lastWarningTick >= WARNING_INTERVAL ) {
+            lastWarningTick = ticks;
+            SpecialAI.LOG.warn( "Maximum idle scans reached; some scans were delayed. If you are getting spammed by this under normal " +
+                            "conditions, you should change your scan settings in {}. Usage last tick: {}",
+                    ConfigUtil.toRelativePath( Config.IDLE.SPEC.getFile() ), String.join( "; ", getUsageReport() ) );
+        }
+        
+        // Split the budget evenly, starting with the lightest users so that any share they don't need goes to the rest
+        scanning.sort( Comparator.comparingInt( budget -> budget.lastDemand ) );
+        int remaining = Math.max( globalBudget, 0 );
+        for( int i = 0; i < scanning.size(); i++ ) {
+            final WorldBudget budget = scanning.get( i );
+            final int share = Math.min( budget.lastDemand, remaining / (scanning.size() - i) );
+            budget.startTick( share );
+            remaining -= share;
+        }
+        BUDGETS.forEach( ( world, budget ) -> {
+            if( budget.lastDemand <= 0 ) budget.startTick( 0 );
+        } );
+        overflow = remaining;
+    }
+    
+    /** The scan budget and usage for a single world. */
+    private static class WorldBudget {
+        // The budget for the current tick
+        
+        /** The remaining scans in this world's share that can go to any mob. */
+        int pool;
+        /** The remaining scans in this world's share held back for mobs that were cut short last tick. */
+        int reserve;
+        /** The maximum number of scans each mob may use this tick. */
+        int quota = Integer.MAX_VALUE;
+        
+        // Usage during the current tick
+        
+        /** The number of scan requests made. */
+        int requesters;
+        /** The total number of scans requested. */
+        int demand;
+        /** The total number of scans granted. */
+        int used;
+        /** The total number of scans requested, but not granted. */
+        int denied;
+        
+        // Usage during the last tick
+        
+        int lastShare;
+        int lastRequesters;
+        int lastDemand;
+        int lastUsed;
+        int lastDenied;
+        
+        /** @return Takes scans from this world's share (and the overflow pool) and returns the number granted. */
+        int grant( int wanted, boolean carriedOver ) {
+            int granted = 0;
+            if( carriedOver && reserve > 0 ) {
+                granted = Math.min( wanted, reserve );
+                reserve -= granted;
+            }
+            // Regular requests are limited to the mob's slice of the share
+            final int limit = Math.min( wanted, Math.max( granted, quota ) );
+            if( granted < limit && pool > 0 ) {
+                final int fromPool = Math.min( limit - granted, pool );
+                pool -= fromPool;
+                granted += fromPool;
+            }
+            if( granted < limit && overflow > 0 ) {
+                final int fromOverflow = Math.min( limit - granted, overflow );
+                overflow -= fromOverflow;
+                granted += fromOverflow;
+            }
+            return granted;
+        }
+        
+        /** Records the usage for the tick that just ended and resets the counters. */
+        void endTick() {
+            lastRequesters = requesters;
+            lastDemand = demand;
+            lastUsed = used;
+            lastDenied = denied;
+            requesters = 0;
+            demand = 0;
+            used = 0;
+            denied = 0;
+        }
+        
+        /** Sets up the budget for the next tick. */
+        void startTick( int share ) {
+            lastShare = share;
+            // Hold back part of the share for mobs that were cut short, so they are served first
+            reserve = Math.min( share / 2, lastDenied );
+            pool = share - reserve;
+            // Worlds that just started scanning have no share yet, so their mobs may take what they need from the overflow
+            quota = lastRequesters <= 0 ? Integer.MAX_VALUE : Math.max( 1, (pool + lastRequesters - 1) / lastRequesters );
+        }
+    }
+}
\ No newline at end of file
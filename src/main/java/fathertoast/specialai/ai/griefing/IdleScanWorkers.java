@@ -0,0 +1,130 @@
+package fathertoast.specialai.ai.griefing;
+
+import fathertoast.specialai.SpecialAI;
+import fathertoast.specialai.config.Config;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongLists;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs idle target searches on a small pool of worker threads, when enabled in the performance config.
+ * <p>
+ * Workers never touch the world. On the server thread, each search only gathers the shared target index of the chunk
+ * sections it covers (see {@link IdleTargetIndex}), which never change once made. Workers then pick out the blocks in
+ * range for the mob's activities and sort them, closest first. Each block found is fully checked again on the server
+ * thread before it is targeted. When too many searches are waiting, mobs search on the server thread instead.
+ */
+public final class IdleScanWorkers {
+    /** The worker pool, or null if it has not been started. */
+    @Nullable
+    private static ThreadPoolExecutor executor;
+    /** The number of threads the current pool was started with. */
+    private static int poolThreads;
+    /** The queue size the current pool was started with. */
+    private static int poolQueueSize;
+    
+    /** @return Returns true if idle target searches should be sent to the worker pool. */
+    static boolean isEnabled() { return Config.GENERAL.PERFORMANCE.asyncScan.get(); }
+    
+    /**
+     * Starts a search for blocks within range of a position that might be targeted for any of the given activities.
+     *
+     * @param activities The activity flags to search for. See {@link IdleTargetIndex#getActivities(boolean, boolean, boolean)}.
+     * @return The pending search, or null if the pool is too busy and the search should be done on the server thread.
+     */
+    @Nullable
+    static Future<LongList> submit( ServerWorld world, BlockPos center, int rangeXZ, int rangeY, int activities ) {
+        final ThreadPoolExecutor pool = getExecutor();
+        // Don't bother gathering any sections if the search would just be turned away
+        if( pool.getQueue().remainingCapacity() <= 0 ) return null;
+        
+        try {
+            return pool.submit( new Search( world, center, rangeXZ, rangeY, activities ) );
+        }
+        catch( RejectedExecutionException ex ) {
+            return null;
+        }
+    }
+    
+    /** @return Returns the blocks found by a finished search, closest first. */
+    static LongList getResult( Future<LongList> search ) {
+        try {
+            return search.get();
+        }
+        catch( InterruptedException | ExecutionException | CancellationException ex ) {
+            SpecialAI.LOG.warn( "Idle target search failed on worker thread", ex );
+            return LongLists.EMPTY_LIST;
+        }
+    }
+    
+    /** @return Returns the worker pool, starting it or replacing it if its config has changed. */
+    private static ThreadPoolExecutor getExecutor() {
+        final int threads = Config.GENERAL.PERFORMANCE.asyncScanThreads.get();
+        final int queueSize = Config.GENERAL.PERFORMANCE.asyncScanQueueSize.get();
+        if( executor == null || poolThreads != threads || poolQueueSize != queueSize ) {
+            // Let any searches already sent to the old pool finish on their own
+            if( executor != null ) executor.shutdown();
+            
+            final AtomicInteger threadCount = new AtomicInteger();
+            executor = new ThreadPoolExecutor( threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>( queueSize ),
+                    task -> {
+                        final Thread thread = new Thread( task, "SpecialAI Idle Search #" + threadCount.incrementAndGet() );
+                        thread.setDaemon( true );
+                        return thread;
+                    } );
+            poolThreads = threads;
+            poolQueueSize = queueSize;
+        }
+        return executor;
+    }
+    
+    /** Stops the worker pool. Called when the server is stopping. */
+    public static void onServerStopping() {
+        if( executor != null ) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+    
+    /** A single search, run on a worker thread. Everything it needs from the world is gathered when it is created. */
+    private static class Search implements Callable<LongList> {
+        /** The position searched around. */
+        final BlockPos CENTER;
+        /** The horizontal and vertical search ranges. */
+        final int RANGE_XZ, RANGE_Y;
+        /** The activity flags searched for. */
+        final int ACTIVITIES;
+        /** The target index of each section covered that holds any possible targets. */
+        final IdleTargetIndex.Section[] SECTIONS;
+        
+        /** Gathers the sections to search. Must be created on the server thread. */
+        Search( ServerWorld world, BlockPos center, int rangeXZ, int rangeY, int activities ) {
+            CENTER = center.immutable();
+            RANGE_XZ = rangeXZ;
+            RANGE_Y = rangeY;
+            ACTIVITIES = activities;
+            SECTIONS = IdleTargetIndex.getSections( world, center, rangeXZ, rangeY );
+        }
+        
+        /** @return Returns all blocks in range that might be targets, closest first. */
+        @Override
+        public LongList call() {
+            final LongArrayList found = new LongArrayList();
+            IdleTargetIndex.addCandidates( found, SECTIONS, CENTER, RANGE_XZ, RANGE_Y, ACTIVITIES );
+            return found;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,138 @@
+package fathertoast.specialai.ai.griefing;
+
+import fathertoast.specialai.SpecialAI;
+import fathertoast.specialai.util.PerWorld;
+import net.minecraft.world.World;
+import net.minecraft.world.server.ServerWorld;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what idle AI does in each world, for each activity, so that its cost and the scan settings can be checked
+ * in game with the "/specialai stats" command.
+ * <p>
+ * Counters can be added to from any thread. Once per second, the totals are sampled so that each counter can also be
+ * shown as a rate over the last several seconds.
+ */
+public final class IdleStats {
+    /** The number of ticks between each sample of the totals. */
+    private static final int SAMPLE_INTERVAL = 20;
+    /** The number of samples kept to work out rates from. */
+    private static final int SAMPLE_WINDOW = 10;
+    
+    /** The things counted for each activity. */
+    public enum Counter {
+        PROBED( "blocks probed" ),
+        FOUND( "targets found" ),
+        SIGHT_CHECKS( "sight checks" ),
+        RAY_TRACES( "ray traces" ),
+        GAVE_UP( "give-ups" ),
+        BROKEN( "blocks broken" ),
+        INTERACTIONS( "interactions" );
+        
+        /** The name shown in the stats report. */
+        private final String NAME;
+        
+        Counter( String name ) { NAME = name; }
+    }
+    
+    /** The activities counted. */
+    private static final IdleActionsGoal.Activity[] ACTIVITIES = {
+            IdleActionsGoal.Activity.HIDING, IdleActionsGoal.Activity.GRIEFING, IdleActionsGoal.Activity.FIDDLING
+    };
+    /** The things counted for each activity. */
+    private static final Counter[] COUNTERS = Counter.values();
+    
+    /** The counters for each world. */
+    private static final PerWorld<WorldStats> STATS = new PerWorld<>( world -> new WorldStats() );
+    /** Takes counts made outside of server worlds, which should never happen, so callers don't need to check. */
+    private static final WorldStats IGNORED = new WorldStats();
+    
+    /** The number of ticks since the last sample. */
+    private static int ticksSinceSample;
+    
+    /** @return Returns the counters for the world. Must be called on the server thread. */
+    static WorldStats get( World world ) { return world instanceof ServerWorld ? STATS.get( (ServerWorld) world ) : IGNORED; }
+    
+    /** Called at the end of each server tick to sample the totals once per second. */
+    public static void onServerTickEnd() {
+        if( ++ticksSinceSample >= SAMPLE_INTERVAL ) {
+            ticksSinceSample = 0;
+            STATS.forEach( ( world, stats ) -> stats.sample() );
+        }
+    }
+    
+    /** @return Returns lines describing the totals and recent rates for each world that has idle AI running. */
+    public static List<String> getReport() {
+        final List<String> report = new ArrayList<>();
+        STATS.forEach( ( world, stats ) -> {
+            report.add( SpecialAI.toString( world.dimension().location() ) + ":" );
+            for( IdleActionsGoal.Activity activity : ACTIVITIES ) {
+                final StringBuilder line = new StringBuilder( "  " ).append( activity.name().toLowerCase( Locale.ROOT ) ).append( ": " );
+                for( Counter counter : COUNTERS ) {
+                    if( counter != COUNTERS[0] ) line.append( ", " );
+                    line.append( String.format( "%d %s (%.1f/s)", stats.getTotal( activity, counter ), counter.NAME,
+                            stats.getRate( activity, counter ) ) );
+                }
+                report.add( line.toString() );
+            }
+        } );
+        return report;
+    }
+    
+    /** @return Returns the index of a counter for an activity, or -1 if the activity is not counted. */
+    private static int getIndex( IdleActionsGoal.Activity activity, Counter counter ) {
+        // The activities counted are the ones after NONE
+        final int activityIndex = activity.ordinal() - 1;
+        return activityIndex < 0 ? -1 : activityIndex * COUNTERS.length + counter.ordinal();
+    }
+    
+    /** The counters for a single world. */
+    static final class WorldStats {
+        /** The running total of each counter. */
+        private final LongAdder[] TOTALS = new LongAdder[ACTIVITIES.length * COUNTERS.length];
+        /** The last few samples of the totals, used as a ring. */
+        private final long[][] SAMPLES = new long[SAMPLE_WINDOW + 1][TOTALS.length];
+        
+        /** The index in the ring of the latest sample. */
+        private int latestSample;
+        /** The number of samples taken, up to the size of the ring. */
+        private int sampleCount;
+        
+        private WorldStats() {
+            for( int i = 0; i < TOTALS.length; i++ ) TOTALS[i] = new LongAdder();
+        }
+        
+        /** Adds one to the counter for an activity. Safe to call from any thread. */
+        void add( IdleActionsGoal.Activity activity, Counter counter ) {
+            final int index = getIndex( activity, counter );
+            if( index >= 0 ) TOTALS[index].increment();
+        }
+        
+        /** @return Returns the total count for an activity. */
+        long getTotal( IdleActionsGoal.Activity activity, Counter counter ) {
+            final int index = getIndex( activity, counter );
+            return index < 0 ? 0L : TOTALS[index].sum();
+        }
+        
+        /** @return Returns the average count per second for an activity over the sampled window. */
+        double getRate( IdleActionsGoal.Activity activity, Counter counter ) {
+            final int index = getIndex( activity, counter );
+            if( index < 0 || sampleCount < 2 ) return 0.0;
+            
+            final int oldestSample = (latestSample - (sampleCount - 1) + SAMPLES.length) % SAMPLES.length;
+            final long change = SAMPLES[latestSample][index] - SAMPLES[oldestSample][index];
+            return change / (double) (sampleCount - 1) * 20.0 / SAMPLE_INTERVAL;
+        }
+        
+        /** Records the current totals as the latest sample. */
+        private void sample() {
+            latestSample = (latestSample + 1) % SAMPLES.length;
+            if( sampleCount < SAMPLES.length ) sampleCount++;
+            for( int i = 0; i < TOTALS.length; i++ ) SAMPLES[latestSample][i] = TOTALS[i].sum();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,149 @@
+package fathertoast.specialai.ai.griefing;
+
+import fathertoast.specialai.util.PerWorld;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import net.minecraft.entity.MobEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of which blocks are currently targeted by idle AI in each world, so that crowds of idle mobs spread out
+ * over different targets instead of all pathing to (and ray tracing, and breaking) the same one.
+ * <p>
+ * A block can be shared by a limited number of helpers, who add their breaking progress to the same total. Mobs must
+ * refresh their claims every tick; claims held by mobs that died, unloaded, or otherwise stopped refreshing are dropped.
+ */
+final class IdleTargetClaims {
+    /** The number of ticks a mob's claim lasts without being refreshed. */
+    private static final int TIMEOUT = 40;
+    /** The number of ticks between sweeps for abandoned claims. */
+    private static final int SWEEP_INTERVAL = 200;
+    
+    /** The claims in each world. */
+    private static final PerWorld<Registry> REGISTRIES = new PerWorld<>( world -> new Registry() );
+    
+    /**
+     * Claims a block for a mob, or adds the mob to an existing claim if there is room.
+     *
+     * @param maxHelpers The number of mobs allowed to join the mob that first claimed the block.
+     * @return The claim now held by the mob, or null if the block is already claimed by too many other mobs.
+     */
+    @Nullable
+    static Claim claim( ServerWorld world, BlockPos pos, MobEntity mob, int maxHelpers ) {
+        final Registry registry = REGISTRIES.get( world );
+        final long now = world.getGameTime();
+        if( now - registry.lastSweep >= SWEEP_INTERVAL ) registry.sweep( now );
+        
+        final long key = pos.asLong();
+        Claim claim = registry.CLAIMS.get( key );
+        if( claim == null ) {
+            claim = new Claim( key );
+            registry.CLAIMS.put( key, claim );
+        }
+        else {
+            claim.prune( now );
+            if( !claim.MOBS.contains( mob ) && claim.MOBS.size() > maxHelpers ) return null;
+        }
+        claim.join( mob, now );
+        return claim;
+    }
+    
+    /** Removes a mob from a claim, dropping the claim if no mobs are left on it. */
+    static void release( ServerWorld world, Claim claim, MobEntity mob ) {
+        claim.leave( mob );
+        if( claim.MOBS.isEmpty() ) {
+            final Registry registry = REGISTRIES.getIfPresent( world );
+            if( registry != null ) registry.CLAIMS.remove( claim.POS, claim );
+        }
+    }
+    
+    /** The claims in a single world. */
+    private static class Registry {
+        /** The claims in this world, by block position. */
+        final Long2ObjectMap<Claim> CLAIMS = new Long2ObjectOpenHashMap<>();
+        /** The game time of the last sweep for abandoned claims. */
+        long lastSweep;
+        
+        /** Drops all mobs that stopped refreshing their claims, and any claims left empty. */
+        void sweep( long now ) {
+            lastSweep = now;
+            final ObjectIterator<Claim> iterator = CLAIMS.values().iterator();
+            while( iterator.hasNext() ) {
+                final Claim claim = iterator.next();
+                claim.prune( now );
+                if( claim.MOBS.isEmpty() ) iterator.remove();
+            }
+        }
+    }
+    
+    /** A single claimed block. */
+    static final class Claim {
+        /** The packed position of the claimed block. */
+        final long POS;
+        /** The mobs sharing this claim. The first is the leader, who speaks for the group. */
+        private final List<MobEntity> MOBS = new ArrayList<>();
+        /** The last game time each mob refreshed its claim. */
+        private final LongList REFRESH_TIMES = new LongArrayList();
+        
+        /** The breaking progress on the block, shared by all mobs on this claim. */
+        private float damage;
+        
+        private Claim( long pos ) { POS = pos; }
+        
+        /** Keeps the mob's claim from timing out. Called each tick the mob works on the block. */
+        void refresh( MobEntity mob, long now ) {
+            final int index = MOBS.indexOf( mob );
+            if( index >= 0 ) REFRESH_TIMES.set( index, now );
+        }
+        
+        /** @return Returns true if the mob speaks for this claim, and should be the one to send block updates to clients. */
+        boolean isLeader( MobEntity mob ) { return !MOBS.isEmpty() && MOBS.get( 0 ) == mob; }
+        
+        /** @return Adds breaking progress to the block and returns the total. */
+        float addDamage( float amount ) {
+            damage += amount;
+            return damage;
+        }
+        
+        /** Adds the mob to this claim, or refreshes it if already on it. */
+        private void join( MobEntity mob, long now ) {
+            final int index = MOBS.indexOf( mob );
+            if( index >= 0 ) {
+                REFRESH_TIMES.set( index, now );
+            }
+            else {
+                MOBS.add( mob );
+                REFRESH_TIMES.add( now );
+            }
+        }
+        
+        /** Removes the mob from this claim. */
+        private void leave( MobEntity mob ) {
+            final int index = MOBS.indexOf( mob );
+            if( index >= 0 ) {
+                MOBS.remove( index );
+                REFRESH_TIMES.removeLong( index );
+            }
+            if( MOBS.isEmpty() ) damage = 0.0F;
+        }
+        
+        /** Removes all mobs that are gone or have stopped refreshing their claims. */
+        private void prune( long now ) {
+            for( int i = MOBS.size() - 1; i >= 0; i-- ) {
+                if( !MOBS.get( i ).isAlive() || now - REFRESH_TIMES.getLong( i ) > TIMEOUT ) {
+                    MOBS.remove( i );
+                    REFRESH_TIMES.removeLong( i );
+                }
+            }
+            if( MOBS.isEmpty() ) damage = 0.0F;
+        }
+    }
+}
\ No newline at end of file
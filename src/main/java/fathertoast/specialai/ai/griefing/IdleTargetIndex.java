@@ -0,0 +1,278 @@
+package fathertoast.specialai.ai.griefing;
+
+import fathertoast.specialai.config.Config;
+import fathertoast.specialai.util.PerWorld;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.bytes.ByteList;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+import it.unimi.dsi.fastutil.longs.LongList;
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.SectionPos;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraftforge.event.world.ChunkEvent;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a shared index of the blocks in each chunk section that might be targeted by idle AI, for each world, so that
+ * mobs using the "indexed" scan mode only look at blocks that could actually be targets.
+ * <p>
+ * A section is indexed the first time a mob looks in it, and is dropped when a block in it changes, when its chunk
+ * unloads, or when the idle target tables are rebuilt. Sections are also re-indexed after a while, to catch any block
+ * changes that did not notify neighbors. Only checks that depend on nothing but the block are made here; mobs still
+ * fully check each block before targeting it.
+ * <p>
+ * For each section, this also caches whether its block palette (the list of block states used in it) holds any state
+ * that might be a target. Mobs in the other scan modes use this to skip sections with no possible targets without
+ * looking up any of their blocks, and sections with none are never searched block by block for the index. The palette
+ * check is redone after the same time as the index, and always when a section is re-indexed.
+ */
+public final class IdleTargetIndex {
+    /** The number of ticks before a section is re-indexed. */
+    private static final int MAX_AGE = 400;
+    
+    /** The flag for blocks that might be targeted for hiding. */
+    static final byte HIDING = 1;
+    /** The flag for blocks that might be targeted for griefing. */
+    static final byte GRIEFING = 1 << 1;
+    /** The flag for blocks that might be targeted for fiddling. */
+    static final byte FIDDLING = 1 << 2;
+    /** The flags for all activities. */
+    static final int ALL_ACTIVITIES = HIDING | GRIEFING | FIDDLING;
+    
+    /** The indexed sections in each world, by section position. */
+    private static final PerWorld<Long2ObjectMap<Section>> INDEX = new PerWorld<>( world -> new Long2ObjectOpenHashMap<>() );
+    /** Returned by the palette flag cache for sections that have not been checked yet. */
+    private static final long NOT_CHECKED = -1L;
+    /** The number of low bits of a palette flag cache entry that hold the activity flags. The rest hold the check time. */
+    private static final int FLAG_BITS = 3;
+    /**
+     * The activities each checked section's block palette might hold targets for, packed with the game time of the
+     * check, in each world, by section position.
+     */
+    private static final PerWorld<Long2LongMap> PALETTE_FLAGS = new PerWorld<>( world -> {
+        final Long2LongMap flags = new Long2LongOpenHashMap();
+        flags.defaultReturnValue( NOT_CHECKED );
+        return flags;
+    } );
+    /** The result list returned by the last search. Reused, since searches only happen on the server thread. */
+    private static final LongArrayList CANDIDATES = new LongArrayList();
+    
+    /** Drops all indexed sections. Called when the idle target tables are rebuilt. */
+    static void clear() {
+        INDEX.forEach( ( world, sections ) -> sections.clear() );
+        PALETTE_FLAGS.forEach( ( world, flags ) -> flags.clear() );
+    }
+    
+    /** @return Returns the activity flags for the given enabled activities. */
+    static int getActivities( boolean hiding, boolean griefing, boolean fiddling ) {
+        return (hiding ? HIDING : 0) | (griefing ? GRIEFING : 0) | (fiddling ? FIDDLING : 0);
+    }
+    
+    /** Drops the index for the section containing the position. Called when a block changes. */
+    public static void onBlockChanged( IWorld world, BlockPos pos ) {
+        final long key = SectionPos.asLong( pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4 );
+        final Long2ObjectMap<Section> sections = INDEX.getIfPresent( world );
+        if( sections != null ) sections.remove( key );
+        final Long2LongMap flags = PALETTE_FLAGS.getIfPresent( world );
+        if( flags != null ) flags.remove( key );
+    }
+    
+    /** Called when a chunk unloads to drop the index for all of its sections. */
+    public static void onChunkUnload( ChunkEvent.Unload event ) {
+        final Long2ObjectMap<Section> sections = INDEX.getIfPresent( event.getWorld() );
+        final Long2LongMap flags = PALETTE_FLAGS.getIfPresent( event.getWorld() );
+        
+        final int chunkX = event.getChunk().getPos().x;
+        final int chunkZ = event.getChunk().getPos().z;
+        for( int y = 0; y < 16; y++ ) {
+            final long key = SectionPos.asLong( chunkX, y, chunkZ );
+            if( sections != null ) sections.remove( key );
+            if( flags != null ) flags.remove( key );
+        }
+    }
+    
+    /**
+     * Checks the block palette of the chunk section at a position for any block state that might be a target. Sections
+     * using the global palette (too many different blocks to list) are assumed to hold targets.
+     *
+     * @param activities The activity flags to check for. See {@link #getActivities(boolean, boolean, boolean)}.
+     * @return Returns false if no block in the section can be a target for the activities, so it can be skipped.
+     */
+    static boolean mayContainTargets( ServerWorld world, BlockPos pos, int activities ) {
+        if( pos.getY() < 0 || pos.getY() > 255 ) return false;
+        
+        final long key = SectionPos.asLong( pos.getX() >> 4, pos.getY() >> 4, pos.getZ() >> 4 );
+        final long now = world.getGameTime();
+        final long cached = PALETTE_FLAGS.get( world ).get( key );
+        // Blocks can change without notifying neighbors, so the check must be redone every so often
+        if( cached != NOT_CHECKED && now - (cached >> FLAG_BITS) < MAX_AGE ) return (cached & activities) != 0;
+        
+        // Leave unloaded chunks to the normal block checks
+        final Chunk chunk = world.getChunkSource().getChunkNow( pos.getX() >> 4, pos.getZ() >> 4 );
+        if( chunk == null ) return true;
+        return (checkPalette( world, chunk, pos.getY() >> 4, key, now ) & activities) != 0;
+    }
+    
+    /** @return Checks the block palette of a chunk section, caches the result, and returns the activity flags found. */
+    private static byte checkPalette( ServerWorld world, Chunk chunk, int sectionY, long key, long now ) {
+        final byte flags = getPaletteFlags( world, chunk.getSections()[sectionY] );
+        PALETTE_FLAGS.get( world ).put( key, now << FLAG_BITS | flags );
+        return flags;
+    }
+    
+    /** @return Returns the activities that any block state in the section's palette might be a target for. */
+    private static byte getPaletteFlags( ServerWorld world, @Nullable ChunkSection section ) {
+        if( ChunkSection.isEmpty( section ) ) return 0;
+        
+        final IdleTargetTables targets = IdleTargetTables.get( world );
+        byte flags = 0;
+        if( section.maybeHas( targets::canHideIn ) ) flags |= HIDING;
+        if( section.maybeHas( targets::mayGrief ) ) flags |= GRIEFING;
+        if( section.maybeHas( targets::canFiddle ) ) flags |= FIDDLING;
+        return flags;
+    }
+    
+    /**
+     * Finds the blocks within range of a position that might be targeted for any of the given activities.
+     *
+     * @param activities The activity flags to search for. See {@link #getActivities(boolean, boolean, boolean)}.
+     * @return The positions of the blocks found, packed as longs and sorted closest first. This list is reused,
+     * so it is only valid until the next search.
+     */
+    static LongList findCandidates( ServerWorld world, BlockPos center, int rangeXZ, int rangeY, int activities ) {
+        CANDIDATES.clear();
+        addCandidates( CANDIDATES, getSections( world, center, rangeXZ, rangeY ), center, rangeXZ, rangeY, activities );
+        return CANDIDATES;
+    }
+    
+    /** @return Returns the index of each loaded section within range of a position, indexing any that are missing or too old. */
+    static Section[] getSections( ServerWorld world, BlockPos center, int rangeXZ, int rangeY ) {
+        final Long2ObjectMap<Section> sections = INDEX.get( world );
+        final long now = world.getGameTime();
+        
+        // Same range as the random scan mode
+        final int minX = center.getX() - rangeXZ + 1, maxX = center.getX() + rangeXZ - 1;
+        final int minY = Math.max( 0, center.getY() - rangeY + 1 ), maxY = Math.min( 255, center.getY() + rangeY - 1 );
+        final int minZ = center.getZ() - rangeXZ + 1, maxZ = center.getZ() + rangeXZ - 1;
+        
+        final List<Section> found = new ArrayList<>();
+        for( int sectionX = minX >> 4; sectionX <= maxX >> 4; sectionX++ ) {
+            for( int sectionZ = minZ >> 4; sectionZ <= maxZ >> 4; sectionZ++ ) {
+                // Don't load chunks just to look for targets
+                final Chunk chunk = world.getChunkSource().getChunkNow( sectionX, sectionZ );
+                if( chunk == null ) continue;
+                
+                for( int sectionY = minY >> 4; sectionY <= maxY >> 4; sectionY++ ) {
+                    final long key = SectionPos.asLong( sectionX, sectionY, sectionZ );
+                    Section section = sections.get( key );
+                    if( section == null || now - section.BUILT_TIME >= MAX_AGE ) {
+                        // Sections whose palette holds no possible target don't need to be searched block by block
+                        section = checkPalette( world, chunk, sectionY, key, now ) != 0 ?
+                                new Section( world, chunk, sectionY, now ) : new Section( now );
+                        sections.put( key, section );
+                    }
+                    if( section.POSITIONS.length > 0 ) found.add( section );
+                }
+            }
+        }
+        return found.toArray( new Section[0] );
+    }
+    
+    /**
+     * Adds the blocks from the given section indexes that are within range of a position and might be targeted for any
+     * of the given activities, then sorts the list closest first. This only reads the section indexes, which never
+     * change once made, so it is safe to call from any thread.
+     *
+     * @param activities The activity flags to search for. See {@link #getActivities(boolean, boolean, boolean)}.
+     */
+    static void addCandidates( LongArrayList candidates, Section[] sections, BlockPos center, int rangeXZ, int rangeY, int activities ) {
+        // Same range as the random scan mode
+        final int minX = center.getX() - rangeXZ + 1, maxX = center.getX() + rangeXZ - 1;
+        final int minY = Math.max( 0, center.getY() - rangeY + 1 ), maxY = Math.min( 255, center.getY() + rangeY - 1 );
+        final int minZ = center.getZ() - rangeXZ + 1, maxZ = center.getZ() + rangeXZ - 1;
+        
+        for( Section section : sections ) {
+            for( int i = 0; i < section.POSITIONS.length; i++ ) {
+                if( (section.FLAGS[i] & activities) == 0 ) continue;
+                final long pos = section.POSITIONS[i];
+                final int x = BlockPos.getX( pos ), y = BlockPos.getY( pos ), z = BlockPos.getZ( pos );
+                if( minX <= x && x <= maxX && minY <= y && y <= maxY && minZ <= z && z <= maxZ ) candidates.add( pos );
+            }
+        }
+        LongArrays.quickSort( candidates.elements(), 0, candidates.size(), ( a, b ) ->
+                Integer.compare( getDistanceSqr( center, a ), getDistanceSqr( center, b ) ) );
+    }
+    
+    /** @return Returns the squared distance between a position and a packed position. */
+    private static int getDistanceSqr( BlockPos center, long pos ) {
+        final int dX = BlockPos.getX( pos ) - center.getX();
+        final int dY = BlockPos.getY( pos ) - center.getY();
+        final int dZ = BlockPos.getZ( pos ) - center.getZ();
+        return dX * dX + dY * dY + dZ * dZ;
+    }
+    
+    /** The blocks in a single chunk section that might be targeted by idle AI. Never changed once made. */
+    static final class Section {
+        /** The game time this section was indexed. */
+        final long BUILT_TIME;
+        /** The packed position of each block that might be a target. */
+        final long[] POSITIONS;
+        /** The activities each block might be targeted for. */
+        final byte[] FLAGS;
+        
+        /** Creates an index for a section with no possible targets. */
+        private Section( long now ) {
+            BUILT_TIME = now;
+            POSITIONS = new long[0];
+            FLAGS = new byte[0];
+        }
+        
+        private Section( ServerWorld world, Chunk chunk, int sectionY, long now ) {
+            BUILT_TIME = now;
+            
+            final ChunkSection section = chunk.getSections()[sectionY];
+            if( ChunkSection.isEmpty( section ) ) {
+                POSITIONS = new long[0];
+                FLAGS = new byte[0];
+                return;
+            }
+            final IdleTargetTables targets = IdleTargetTables.get( world );
+            final LongList positions = new LongArrayList();
+            final ByteList flags = new ByteArrayList();
+            final BlockPos.Mutable pos = new BlockPos.Mutable();
+            final int baseX = chunk.getPos().getMinBlockX(), baseY = sectionY << 4, baseZ = chunk.getPos().getMinBlockZ();
+            for( int y = 0; y < 16; y++ ) {
+                for( int z = 0; z < 16; z++ ) {
+                    for( int x = 0; x < 16; x++ ) {
+                        final BlockState state = section.getBlockState( x, y, z );
+                        if( state.isAir() ) continue;
+                        
+                        pos.set( baseX + x, baseY + y, baseZ + z );
+                        byte flag = 0;
+                        if( targets.canHideIn( state ) ) flag |= HIDING;
+                        if( targets.mayGrief( state ) ) flag |= GRIEFING;
+                        if( targets.canFiddle( state ) ) flag |= FIDDLING;
+                        if( flag != 0 ) {
+                            positions.add( pos.asLong() );
+                            flags.add( flag );
+                        }
+                    }
+                }
+            }
+            POSITIONS = positions.toLongArray();
+            FLAGS = flags.toByteArray();
+        }
+    }
+}
\ No newline at end of file
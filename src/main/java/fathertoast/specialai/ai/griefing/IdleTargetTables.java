@@ -0,0 +1,169 @@
+package fathertoast.specialai.ai.griefing;
+
+import fathertoast.specialai.config.Config;
+import fathertoast.specialai.util.PerWorld;
+import net.minecraft.block.*;
+import net.minecraft.block.material.Material;
+import net.minecraft.world.World;
+import net.minecraft.world.server.ServerWorld;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The idle AI target rules, compiled from the config into a table of block states for each activity, so that checking
+ * whether a block can be targeted is a single lookup by block state id.
+ * <p>
+ * Some rules depend on the dimension (such as glowstone only being a natural light in the Nether), so the tables are
+ * built for each world the first time they are needed. All tables are rebuilt when the idle target config changes or
+ * tags are reloaded, and a world's tables are dropped when it unloads.
+ * Light values are taken from each block state, so the tables don't account for blocks whose light depends on position.
+ */
+public final class IdleTargetTables {
+    /** The tables for each world. */
+    private static final PerWorld<IdleTargetTables> TABLES = new PerWorld<>( IdleTargetTables::new );
+    
+    /** The config values the tables were built from. */
+    private static Object[] builtFrom = getConfigValues();
+    
+    /** @return Returns the tables for the world, building them if needed. Only server worlds' tables are kept. */
+    static IdleTargetTables get( World world ) {
+        return world instanceof ServerWorld ? TABLES.get( (ServerWorld) world ) : new IdleTargetTables( world );
+    }
+    
+    /** Called once per server tick to discard all tables, and everything built from them, if the config has been changed. */
+    public static void checkConfig() {
+        final Object[] current = getConfigValues();
+        if( !Arrays.equals( builtFrom, current ) ) {
+            builtFrom = current;
+            clear();
+        }
+    }
+    
+    /** Called when tags are reloaded to discard all tables, and everything built from them, since target lists may use tags. */
+    public static void onTagsUpdated() { clear(); }
+    
+    /** Discards all tables and everything built from them. */
+    private static void clear() {
+        TABLES.clear();
+        IdleTargetIndex.clear();
+    }
+    
+    /** @return Returns the current value of every config option used to build the tables. */
+    private static Object[] getConfigValues() {
+        return new Object[] {
+                Config.IDLE.HIDING.targetList.WHITELIST.get(), Config.IDLE.HIDING.targetList.BLACKLIST.get(),
+                Config.IDLE.GRIEFING.targetLights.get(), Config.IDLE.GRIEFING.targetBeds.get(),
+                Config.IDLE.GRIEFING.targetWhitelist.get(), Config.IDLE.GRIEFING.targetWhitelistLootable.get(),
+                Config.IDLE.GRIEFING.targetBlacklist.get(), Config.IDLE.GRIEFING.resistanceThreshold.get(),
+                Config.IDLE.FIDDLING.targetDoors.get(), Config.IDLE.FIDDLING.targetSwitches.get(),
+                Config.IDLE.FIDDLING.targetList.WHITELIST.get(), Config.IDLE.FIDDLING.targetList.BLACKLIST.get()
+        };
+    }
+    
+    /** The block states that can be targeted for hiding. */
+    private final BitSet HIDING = new BitSet();
+    /** The block states that can be targeted for griefing. */
+    private final BitSet GRIEFING = new BitSet();
+    /** The block states that can be targeted for griefing only if they are not a container with a loot table. */
+    private final BitSet GRIEFING_LOOTABLE = new BitSet();
+    /** The block states that can be targeted for fiddling. */
+    private final BitSet FIDDLING = new BitSet();
+    /** The block states weak enough for mad creepers to blow up. */
+    private final BitSet EXPLODABLE = new BitSet();
+    
+    private IdleTargetTables( World world ) {
+        final boolean nether = World.NETHER.equals( world.dimension() );
+        final float resistanceThreshold = (float) Config.IDLE.GRIEFING.resistanceThreshold.get();
+        for( BlockState state : Block.BLOCK_STATE_REGISTRY ) {
+            final int id = Block.getId( state );
+            if( isHidingTarget( state ) ) HIDING.set( id );
+            switch( getGriefingTarget( state, nether ) ) {
+                case TARGET:
+                    GRIEFING.set( id );
+                    break;
+                case LOOTABLE:
+                    GRIEFING_LOOTABLE.set( id );
+                    break;
+                default:
+            }
+            if( isFiddlingTarget( state ) ) FIDDLING.set( id );
+            //noinspection deprecation
+            if( state.getBlock().getExplosionResistance() < resistanceThreshold ) EXPLODABLE.set( id );
+        }
+    }
+    
+    /** @return Returns true if the block state can be targeted for hiding. */
+    boolean canHideIn( BlockState state ) { return HIDING.get( Block.getId( state ) ); }
+    
+    /** @return Returns true if the block state can be targeted for griefing. */
+    boolean canGrief( BlockState state ) { return GRIEFING.get( Block.getId( state ) ); }
+    
+    /** @return Returns true if the block state can be targeted for griefing, but only if it is not a container with a loot table. */
+    boolean canGriefIfLooted( BlockState state ) { return GRIEFING_LOOTABLE.get( Block.getId( state ) ); }
+    
+    /** @return Returns true if the block state might be targeted for griefing, depending on its tile entity. */
+    boolean mayGrief( BlockState state ) {
+        final int id = Block.getId( state );
+        return GRIEFING.get( id ) || GRIEFING_LOOTABLE.get( id );
+    }
+    
+    /** @return Returns true if the block state can be targeted for fiddling. */
+    boolean canFiddle( BlockState state ) { return FIDDLING.get( Block.getId( state ) ); }
+    
+    /** @return Returns true if the block state is weak enough for mad creepers to blow up. */
+    boolean canExplode( BlockState state ) { return EXPLODABLE.get( Block.getId( state ) ); }
+    
+    /** The possible results of the griefing target rules for a block state. */
+    private enum GriefingTarget { NONE, TARGET, LOOTABLE }
+    
+    /** @return Returns true if the specified block can be targeted for hiding. */
+    private static boolean isHidingTarget( BlockState state ) {
+        if( Config.IDLE.HIDING.targetList.BLACKLIST.get().matches( state ) ) {
+            return false;
+        }
+        return Config.IDLE.HIDING.targetList.WHITELIST.get().matches( state );
+    }
+    
+    /** @return Returns whether the specified block can be targeted for griefing. */
+    private static GriefingTarget getGriefingTarget( BlockState state, boolean nether ) {
+        if( state.getMaterial().isLiquid() || Config.IDLE.GRIEFING.targetBlacklist.get().matches( state ) ) {
+            return GriefingTarget.NONE;
+        }
+        if( Config.IDLE.GRIEFING.targetLights.get() && state.getLightEmission() > 1 && !isNaturalLightBlock( state.getBlock(), nether ) ) {
+            return GriefingTarget.TARGET;
+        }
+        if( Config.IDLE.GRIEFING.targetBeds.get() && state.getBlock() instanceof BedBlock ) {
+            return GriefingTarget.TARGET;
+        }
+        if( Config.IDLE.GRIEFING.targetWhitelistLootable.get().matches( state ) ) {
+            return GriefingTarget.LOOTABLE;
+        }
+        return Config.IDLE.GRIEFING.targetWhitelist.get().matches( state ) ? GriefingTarget.TARGET : GriefingTarget.NONE;
+    }
+    
+    /** @return Returns true if the specified block can be targeted for fiddling. */
+    private static boolean isFiddlingTarget( BlockState state ) {
+        if( Config.IDLE.FIDDLING.targetList.BLACKLIST.get().matches( state ) ) {
+            return false;
+        }
+        final Block block = state.getBlock();
+        if( Config.IDLE.FIDDLING.targetDoors.get() && state.getMaterial() != Material.METAL && state.getMaterial() != Material.HEAVY_METAL &&
+                (block instanceof DoorBlock || block instanceof TrapDoorBlock || block instanceof FenceGateBlock) ) {
+            return true;
+        }
+        if( Config.IDLE.FIDDLING.targetSwitches.get() && (block instanceof LeverBlock || block instanceof AbstractButtonBlock) ) {
+            return true;
+        }
+        return Config.IDLE.FIDDLING.targetList.WHITELIST.get().matches( state );
+    }
+    
+    /** @return Returns true if the block is a natural light source in the dimension. */
+    private static boolean isNaturalLightBlock( Block block, boolean nether ) {
+        // Note: 1.17+ has Glow Berries/Lichen & Amethyst Bud/Cluster
+        return block instanceof AbstractFireBlock || block instanceof OreBlock || block instanceof RedstoneOreBlock ||
+                block == Blocks.SEA_PICKLE || block == Blocks.MAGMA_BLOCK || block == Blocks.SHROOMLIGHT ||
+                // Unnatural when outside the Nether
+                nether && block == Blocks.GLOWSTONE;
+    }
+}
\ No newline at end of file
@@ -2,6 +2,7 @@ package fathertoast.specialai.ai.griefing;
 
 import fathertoast.crust.api.lib.LevelEventHelper;
 import fathertoast.specialai.config.Config;
+import fathertoast.specialai.util.BlockDamageBroadcaster;
 import fathertoast.specialai.util.BlockHelper;
 import net.minecraft.block.*;
 import net.minecraft.block.material.Material;
@@ -148,7 +149,7 @@ public class SpecialBreakDoorGoal extends BreakDoorGoal {
         blockDamage = 0.0F;
         targetBlock = null;
         hasDoor = false;
-        mob.level.destroyBlockProgress( mob.getId(), doorPos, -1 );
+        BlockDamageBroadcaster.send( mob.level, mob.getId(), doorPos, -1 );
     }
     
     /** Called each tick while this AI is active. */
@@ -198,7 +199,7 @@ public class SpecialBreakDoorGoal extends BreakDoorGoal {
         // Update block damage
         final int damage = (int) Math.ceil( blockDamage * 10.0F ) - 1;
         if( damage != lastBlockDamage ) {
-            world.destroyBlockProgress( mob.getId(), doorPos, damage );
+            BlockDamageBroadcaster.send( world, mob.getId(), doorPos, damage );
             lastBlockDamage = damage;
         }
     }
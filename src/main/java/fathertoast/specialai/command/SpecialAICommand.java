@@ -0,0 +1,47 @@
+package fathertoast.specialai.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import fathertoast.specialai.SpecialAI;
+import fathertoast.specialai.ai.DeferredActionQueue;
+import fathertoast.specialai.ai.griefing.IdleScanScheduler;
+import fathertoast.specialai.ai.griefing.IdleStats;
+import fathertoast.specialai.util.HiddenMobIndex;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import net.minecraft.util.text.StringTextComponent;
+import net.minecraft.world.server.ServerWorld;
+
+/**
+ * The "/specialai" server command, used by operators to check on what this mod is doing.
+ * <p>
+ * "/specialai stats" shows idle AI counts and rates for each world, along with the scan budget usage,
+ * the deferred action queue, and the number of hidden mobs.
+ */
+public final class SpecialAICommand {
+    /** Registers this command. Called when the server registers its commands. */
+    public static void register( CommandDispatcher<CommandSource> dispatcher ) {
+        dispatcher.register( Commands.literal( SpecialAI.MOD_ID )
+                .requires( source -> source.hasPermission( 2 ) )
+                .then( Commands.literal( "stats" ).executes( context -> sendStats( context.getSource() ) ) ) );
+    }
+    
+    /** Sends the stats report to the command source. */
+    private static int sendStats( CommandSource source ) {
+        send( source, "Idle AI (totals and rates per second):" );
+        for( String line : IdleStats.getReport() ) send( source, line );
+        
+        send( source, "Idle scan budget last tick:" );
+        for( String line : IdleScanScheduler.getUsageReport() ) send( source, "  " + line );
+        
+        send( source, "Deferred actions: " + DeferredActionQueue.getReport() );
+        
+        send( source, "Hidden mobs:" );
+        for( ServerWorld world : source.getServer().getAllLevels() ) {
+            send( source, "  " + SpecialAI.toString( world.dimension().location() ) + ": " + HiddenMobIndex.getCount( world ) );
+        }
+        return 1;
+    }
+    
+    /** Sends a single line of the report. */
+    private static void send( CommandSource source, String line ) { source.sendSuccess( new StringTextComponent( line ), false ); }
+}
\ No newline at end of file
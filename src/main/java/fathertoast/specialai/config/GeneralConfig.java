@@ -15,12 +15,13 @@ public class GeneralConfig extends AbstractConfigFile {
     public final Reactions REACTIONS;
     public final Jockeys JOCKEYS;
     public final DoorBreaking DOOR_BREAKING;
+    public final Performance PERFORMANCE;
     
     /** Builds the config spec that should be used for this config. */
     GeneralConfig( ConfigManager cfgManager, String cfgName ) {
         super( cfgManager, cfgName,
                 "This config contains options for several miscellaneous features in the mod, such as: " +
-                        "animals, reactions, jockeys, and door breaking."
+                        "animals, reactions, jockeys, door breaking, and performance."
         );
         
         SPEC.fileOnlyNewLine();
@@ -32,6 +33,7 @@ public class GeneralConfig extends AbstractConfigFile {
         REACTIONS = new Reactions( this );
         JOCKEYS = new Jockeys( this );
         DOOR_BREAKING = new DoorBreaking( this );
+        PERFORMANCE = new Performance( this );
     }
     
     public static class Animals extends AbstractConfigCategory<GeneralConfig> {
@@ -273,4 +275,63 @@ public class GeneralConfig extends AbstractConfigFile {
             );
         }
     }
+    
+    public static class Performance extends AbstractConfigCategory<GeneralConfig> {
+        
+        public final BooleanField deferInit;
+        public final IntField deferInitCount;
+        public final DoubleField deferInitTime;
+        public final DoubleField deferInitNearRange;
+        
+        public final BooleanField asyncScan;
+        public final IntField asyncScanThreads;
+        public final IntField asyncScanQueueSize;
+        
+        public final BooleanField activityTiers;
+        public final DoubleField activityTiersNearRange;
+        public final DoubleField activityTiersSleepRange;
+        public final IntField activityTiersFarMultiplier;
+        
+        Performance( GeneralConfig parent ) {
+            super( parent, "performance",
+                    "Options to limit the server time used by this mod's features." );
+            
+            deferInit = SPEC.define( new BooleanField( "deferred_init.enabled", false,
+                    "If true, mobs that join the world away from players have their AI set up over the following ticks, " +
+                            "instead of all at once. This smooths out lag spikes when many mobs are loaded at the same time " +
+                            "(for example, when flying into a mob farm)." ) );
+            deferInitCount = SPEC.define( new IntField( "deferred_init.max_per_tick", 32, IntField.Range.POSITIVE,
+                    "The maximum number of waiting mobs in each dimension that have their AI set up each tick. " +
+                            "Mobs closest to players are set up first." ) );
+            deferInitTime = SPEC.define( new DoubleField( "deferred_init.max_time", 2.0, DoubleField.Range.NON_NEGATIVE,
+                    "The maximum time (in milliseconds) spent setting up waiting mobs in each dimension each tick. 0 is no limit." ) );
+            deferInitNearRange = SPEC.define( new DoubleField( "deferred_init.near_range", 32.0, DoubleField.Range.NON_NEGATIVE,
+                    "Mobs within this distance of any player always have their AI set up right away, regardless of the limits above." ) );
+            
+            SPEC.newLine();
+            
+            asyncScan = SPEC.define( new BooleanField( "async_scan.enabled", false,
+                    "If true, mobs search for idle targets (for griefing, fiddling, and hiding) on worker threads, using the " +
+                            "shared index of possible targets. Blocks found are fully checked again on the server thread on a later tick " +
+                            "before being targeted, and only then count towards the scan limits. While enabled, the idle \"scan_mode\" option is only used when the workers fall behind." ) );
+            asyncScanThreads = SPEC.define( new IntField( "async_scan.threads", 2, IntField.Range.POSITIVE,
+                    "The number of worker threads used to search for idle targets." ) );
+            asyncScanQueueSize = SPEC.define( new IntField( "async_scan.max_pending", 64, IntField.Range.POSITIVE,
+                    "The maximum number of searches that can wait for a worker. When this is full, mobs search on the server thread instead." ) );
+            
+            SPEC.newLine();
+            
+            activityTiers = SPEC.define( new BooleanField( "activity_tiers.enabled", false,
+                    "If true, mobs' idle searches (idle griefing, fiddling, and hiding; eating breeding items; and looking for " +
+                            "mounts) slow down when no player is nearby, and stop entirely when no player is within the sleep range. " +
+                            "Each mob checks for the nearest player every 5 seconds." ) );
+            activityTiersNearRange = SPEC.define( new DoubleField( "activity_tiers.near_range", 64.0, DoubleField.Range.NON_NEGATIVE,
+                    "Mobs within this distance of any player search as normal." ) );
+            activityTiersSleepRange = SPEC.define( new DoubleField( "activity_tiers.sleep_range", 128.0, DoubleField.Range.NON_NEGATIVE,
+                    "Mobs further than this from every player do not search at all. Between the near and sleep ranges, " +
+                            "mobs search less often." ) );
+            activityTiersFarMultiplier = SPEC.define( new IntField( "activity_tiers.far_delay_multiplier", 4, IntField.Range.POSITIVE,
+                    "The delay between searches is multiplied by this for mobs between the near and sleep ranges." ) );
+        }
+    }
 }
\ No newline at end of file
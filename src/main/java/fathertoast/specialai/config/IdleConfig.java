@@ -5,6 +5,8 @@ import fathertoast.crust.api.config.common.AbstractConfigFile;
 import fathertoast.crust.api.config.common.ConfigManager;
 import fathertoast.crust.api.config.common.field.*;
 import fathertoast.crust.api.config.common.value.*;
+import fathertoast.specialai.ai.griefing.IdleActionsGoal;
+import fathertoast.specialai.util.HiddenMobIndex;
 import net.minecraft.block.*;
 import net.minecraft.entity.EntityType;
 import net.minecraftforge.registries.ForgeRegistries;
@@ -47,6 +49,9 @@ public class IdleConfig extends AbstractConfigFile {
         public final IntField scanDelay;
         public final IntField scanCount;
         public final IntField scanCountGlobal;
+        public final EnumField<IdleActionsGoal.ScanMode> scanMode;
+        
+        public final BooleanField claimTargets;
         
         IdleGeneral( IdleConfig parent ) {
             super( parent, "idle_general",
@@ -68,7 +73,20 @@ public class IdleConfig extends AbstractConfigFile {
             scanCount = SPEC.define( new IntField( "scan_count", 32, IntField.Range.POSITIVE,
                     "The number of blocks each mob randomly searches to grief/fiddle with every \"scan_delay\" ticks." ) );
             scanCountGlobal = SPEC.define( new IntField( "global_scan_count", 3000, IntField.Range.NON_NEGATIVE,
-                    "The maximum number of blocks that can be searched in any given tick by all mobs. 0 is no limit." ) );
+                    "The maximum number of blocks that can be searched in any given tick by all mobs. 0 is no limit.",
+                    "This is split evenly between dimensions, and then between the mobs scanning in each dimension." ) );
+            scanMode = SPEC.define( new EnumField<>( "scan_mode", IdleActionsGoal.ScanMode.RANDOM,
+                    "How mobs pick the blocks to search. RANDOM searches random blocks in range each scan (favoring closer blocks), " +
+                            "so it may search the same block several times before finding a rare target. CURSOR searches every " +
+                            "block in range once, closest first, continuing where the mob's last scan left off. INDEXED only " +
+                            "searches blocks from a shared index of possible targets, closest first, so its cost depends on how " +
+                            "many targets are around rather than on \"scan_count\"." ) );
+            
+            SPEC.newLine();
+            
+            claimTargets = SPEC.define( new BooleanField( "claim_targets", false,
+                    "If true, a block targeted by one mob is skipped by other mobs looking for targets, so groups of mobs " +
+                            "spread out over different targets instead of all going for the same one." ) );
         }
     }
     
@@ -82,6 +100,7 @@ public class IdleConfig extends AbstractConfigFile {
         public final BooleanField breakSound;
         
         public final DoubleField breakSpeed;
+        public final IntField maxHelpers;
         public final BooleanField madCreepers;
         public final DoubleField resistanceThreshold;
         
@@ -122,6 +141,9 @@ public class IdleConfig extends AbstractConfigFile {
             
             breakSpeed = SPEC.define( new DoubleField( "break_speed", 0.5, DoubleField.Range.NON_NEGATIVE,
                     "The block breaking speed multiplier for mobs griefing blocks, relative to the player's block breaking speed." ) );
+            maxHelpers = SPEC.define( new IntField( "break_helpers", 0, IntField.Range.NON_NEGATIVE,
+                    "If \"claim_targets\" is enabled in the idle general options, this is the number of extra mobs that can " +
+                            "help break a block already targeted by another mob. Helpers add to the same breaking progress." ) );
             madCreepers = SPEC.define( new BooleanField( "mad_creepers", false,
                     "If true, creepers will be upset about not having arms to grief blocks with and resort to what they know best." ) );
             resistanceThreshold = SPEC.define( new DoubleField( "resistance_threshold", 6.0D, DoubleField.Range.NON_NEGATIVE,
@@ -233,6 +255,10 @@ public class IdleConfig extends AbstractConfigFile {
         public final DoubleField.EnvironmentSensitive lootableChance;
         public final BlockListField.Combined targetList;
         
+        public final IntField maxPerChunk;
+        public final IntField maxPerDimension;
+        public final EnumField<HiddenMobIndex.EvictionPolicy> evictionPolicy;
+        
         Hiding( IdleConfig parent ) {
             super( parent, "idle_hiding",
                     "Options to customize monsters' idle hiding behavior. This causes the mob to crawl " +
@@ -264,6 +290,20 @@ public class IdleConfig extends AbstractConfigFile {
                                     "Note that only blocks with tile entities are able to be hidden in." ) ),
                     SPEC.define( new BlockListField( "targets.blacklist", new BlockList() ) )
             );
+            
+            SPEC.newLine();
+            
+            maxPerChunk = SPEC.define( new IntField( "limits.max_per_chunk", 0, IntField.Range.NON_NEGATIVE,
+                    "The maximum number of mobs that can be hidden in the blocks of a single chunk. When a mob hides in a " +
+                            "chunk that is already full, another mob hidden there is forced out to make room. Set to 0 for no limit." ) );
+            maxPerDimension = SPEC.define( new IntField( "limits.max_per_dimension", 0, IntField.Range.NON_NEGATIVE,
+                    "The maximum number of mobs that can be hidden in each dimension, counting chunks that are not loaded. " +
+                            "When a dimension is full, a mob hidden in a loaded chunk is forced out to make room " +
+                            "(or the new mob does not hide, if none are loaded). Set to 0 for no limit." ) );
+            evictionPolicy = SPEC.define( new EnumField<>( "limits.eviction_policy", HiddenMobIndex.EvictionPolicy.DESPAWNABLE_FIRST,
+                    "Which hidden mob is forced out when a limit is reached. OLDEST_FIRST picks the mob that has been hidden " +
+                            "the longest, while DESPAWNABLE_FIRST picks the oldest mob that would normally despawn, if any " +
+                            "(keeping hidden mobs that are meant to stick around, such as name-tagged ones)." ) );
         }
         
         /** Build a list of chest blocks. */
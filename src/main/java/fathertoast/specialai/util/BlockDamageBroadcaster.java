@@ -0,0 +1,87 @@
+package fathertoast.specialai.util;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.play.server.SAnimateBlockBreakPacket;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraft.world.server.ServerWorld;
+
+import java.util.List;
+
+/**
+ * Collects the block breaking progress shown by this mod's AI during each tick and sends it all at the end of the tick.
+ * <p>
+ * Clients only show one cracking block for each breaker, so only the latest progress sent by each breaker during a tick
+ * is kept. Sending works the same as {@link ServerWorld#destroyBlockProgress(int, BlockPos, int)}, except that all of
+ * a world's updates are sent in a single pass over its players.
+ */
+public final class BlockDamageBroadcaster {
+    /** Players further than this from a block (squared) are not sent its progress. Matches vanilla. */
+    private static final double RANGE_SQR = 1024.0;
+    
+    /** The latest progress from each breaker this tick, in each world, by breaker entity id. */
+    private static final PerWorld<Int2ObjectMap<Update>> PENDING = new PerWorld<>( world -> new Int2ObjectOpenHashMap<>() );
+    
+    /**
+     * Shows block breaking progress to nearby players at the end of the tick, replacing any progress sent by the same
+     * breaker earlier in the tick.
+     *
+     * @param breakerId The entity id of the breaker. This is also used to tell apart blocks broken at the same time.
+     * @param progress  The breaking stage to show, from 0 to 9, or anything else to stop showing progress.
+     */
+    public static void send( World world, int breakerId, BlockPos pos, int progress ) {
+        if( !(world instanceof ServerWorld) ) {
+            world.destroyBlockProgress( breakerId, pos, progress );
+            return;
+        }
+        final Int2ObjectMap<Update> pending = PENDING.get( (ServerWorld) world );
+        final Update update = pending.get( breakerId );
+        if( update == null ) {
+            pending.put( breakerId, new Update( breakerId, pos.asLong(), progress ) );
+        }
+        else {
+            update.pos = pos.asLong();
+            update.progress = progress;
+        }
+    }
+    
+    /** Sends all progress collected this tick. Called at the end of each server tick. */
+    public static void flush() {
+        PENDING.forEach( ( world, pending ) -> {
+            if( pending.isEmpty() ) return;
+            
+            final List<ServerPlayerEntity> players = world.players();
+            for( Update update : pending.values() ) {
+                final double x = BlockPos.getX( update.pos ), y = BlockPos.getY( update.pos ), z = BlockPos.getZ( update.pos );
+                
+                // The same packet can go to every player in range
+                SAnimateBlockBreakPacket packet = null;
+                for( ServerPlayerEntity player : players ) {
+                    if( player.getId() == update.BREAKER_ID || player.distanceToSqr( x, y, z ) >= RANGE_SQR ) continue;
+                    
+                    if( packet == null ) packet = new SAnimateBlockBreakPacket( update.BREAKER_ID, BlockPos.of( update.pos ), update.progress );
+                    player.connection.send( packet );
+                }
+            }
+            pending.clear();
+        } );
+    }
+    
+    /** The latest breaking progress sent by a single breaker. */
+    private static class Update {
+        /** The entity id of the breaker. */
+        final int BREAKER_ID;
+        /** The packed position of the block. */
+        long pos;
+        /** The breaking stage. */
+        int progress;
+        
+        Update( int breakerId, long blockPos, int breakProgress ) {
+            BREAKER_ID = breakerId;
+            pos = blockPos;
+            progress = breakProgress;
+        }
+    }
+}
\ No newline at end of file
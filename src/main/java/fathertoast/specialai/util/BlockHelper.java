@@ -3,6 +3,8 @@ package fathertoast.specialai.util;
 import fathertoast.crust.api.lib.NBTHelper;
 import fathertoast.specialai.SpecialAI;
 import fathertoast.specialai.config.Config;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import net.minecraft.block.BlockState;
 import net.minecraft.enchantment.EnchantmentHelper;
 import net.minecraft.entity.Entity;
@@ -40,9 +42,15 @@ import java.util.stream.Collectors;
  */
 public final class BlockHelper {
     
-    private static final String TAG_HIDDEN_MOB = SpecialAI.MOD_ID + "_hiding";
+    static final String TAG_HIDDEN_MOB = SpecialAI.MOD_ID + "_hiding";
+    static final String TAG_HIDE_INFO = SpecialAI.MOD_ID + "_hiding_info";
     private static final String TAG_HIDE_DISABLED = SpecialAI.MOD_ID + "_hide_disabled";
     
+    /** The number of ticks a hiding spot found to have no room for its mob to come out is assumed to stay blocked. */
+    private static final int BLOCKED_SPOT_TTL = 10;
+    /** The game time until which each recently checked hiding spot with no room for its mob is assumed to stay blocked. */
+    private static final PerWorld<Long2LongMap> BLOCKED_SPOTS = new PerWorld<>( world -> new Long2LongOpenHashMap() );
+    
     /** @return Returns true if the entity can target the block. */
     public static boolean shouldDamage( BlockState block, MobEntity entity, boolean needsTool, World world, BlockPos pos ) {
         return block.getDestroySpeed( world, pos ) >= 0.0F && !block.getMaterial().isLiquid() &&
@@ -148,30 +156,87 @@ public final class BlockHelper {
         }
         else if( tileEntity instanceof LockableLootTileEntity ) {
             tag.putBoolean( TAG_HIDE_DISABLED, !Config.IDLE.HIDING.lootableChance.rollChance( world.getRandom(), world, pos )
-                    && NBTHelper.containsString( tileEntity.save( new CompoundNBT() ), "LootTable" ) );
+                    && hasLootTable( tileEntity ) );
         }
         return !NBTHelper.containsCompound( tag, TAG_HIDDEN_MOB );
     }
     
+    /**
+     * Checks whether a container still has a loot table that has not been rolled yet (i.e., it has never been opened).
+     * <p>
+     * Reads the loot table directly from vanilla lootable containers, rather than saving the whole container
+     * (including its inventory) to NBT just to look for the loot table tag.
+     *
+     * @param tileEntity The container to check.
+     * @return True if the container has a loot table.
+     * @see LockableLootTileEntity#trySaveLootTable(CompoundNBT)
+     */
+    @SuppressWarnings( "JavadocReference" )
+    public static boolean hasLootTable( TileEntity tileEntity ) {
+        if( tileEntity instanceof LockableLootTileEntity ) {
+            return ((LockableLootTileEntity) tileEntity).lootTable != null;
+        }
+        // Fall back to the saved data for containers that handle loot tables some other way
+        return NBTHelper.containsString( tileEntity.save( new CompoundNBT() ), "LootTable" );
+    }
+    
     /**
      * Hides a mob in a block. Prior to calling this, make sure the mob can be hidden here
      * via {@link #canHideMob(World, BlockPos)}.
      * <p>
+     * If the chunk or dimension already holds as many hidden mobs as the config allows, other hidden mobs are forced
+     * out to make room. If no room can be made, the mob does not hide.
+     * <p>
      * @param world The world we live in. Absolutely mad.
      * @param pos   Position to hide at.
      * @param mob   The entity to hide.
      */
     public static void hideMob( World world, BlockPos pos, MobEntity mob ) {
         TileEntity tileEntity = world.getBlockEntity( pos );
-        if( tileEntity == null ) return;
+        if( tileEntity == null || world instanceof ServerWorld && !HiddenMobIndex.makeRoom( (ServerWorld) world, pos ) ) return;
         
-        if( mob.saveAsPassenger( NBTHelper.getOrCreateCompound( tileEntity.getTileData(), TAG_HIDDEN_MOB ) ) ) {
-            // Successfully saved, remove the mob and play effects
+        CompoundNBT mobTag = new CompoundNBT();
+        if( mob.saveAsPassenger( mobTag ) ) {
+            // Successfully saved, store only what differs from a fresh mob of its type
+            final long hideInfo = HiddenMobIndex.packInfo( world.getGameTime(), isDespawnable( mob ) );
+            tileEntity.getTileData().put( TAG_HIDDEN_MOB, world instanceof ServerWorld ?
+                    HiddenMobCodec.compact( (ServerWorld) world, mobTag ) : mobTag );
+            tileEntity.getTileData().putLong( TAG_HIDE_INFO, hideInfo );
+            tileEntity.setChanged();
+            
+            // Remove the mob and play effects
+            HiddenMobIndex.add( world, pos, hideInfo );
             mob.spawnAnim();
             mob.remove();
         }
     }
     
+    /** @return Returns true if the mob would normally despawn when no players are nearby. */
+    private static boolean isDespawnable( MobEntity mob ) {
+        return !mob.isPersistenceRequired() && !mob.requiresCustomPersistence() && mob.removeWhenFarAway( Double.MAX_VALUE );
+    }
+    
+    /** @return Returns true if the hiding spot was recently found to have no room for its mob to come out. */
+    private static boolean isSpotBlocked( ServerWorld world, BlockPos pos ) {
+        final Long2LongMap blockedSpots = BLOCKED_SPOTS.getIfPresent( world );
+        if( blockedSpots == null || blockedSpots.isEmpty() ) return false;
+        
+        final long blockedUntil = blockedSpots.get( pos.asLong() );
+        if( blockedUntil == 0L ) return false;
+        if( world.getGameTime() < blockedUntil ) return true;
+        blockedSpots.remove( pos.asLong() );
+        return false;
+    }
+    
+    /** Remembers that the hiding spot has no room for its mob to come out, for a short time. */
+    private static void markSpotBlocked( ServerWorld world, BlockPos pos ) {
+        final Long2LongMap blockedSpots = BLOCKED_SPOTS.get( world );
+        final long now = world.getGameTime();
+        // Spots are only cleared when checked again, so clear out old ones now and then
+        if( blockedSpots.size() >= 256 ) blockedSpots.long2LongEntrySet().removeIf( entry -> entry.getLongValue() <= now );
+        blockedSpots.put( pos.asLong(), now + BLOCKED_SPOT_TTL );
+    }
+    
     /**
      * Checks if there is a hiding mob. If so, unhides the mob and targets the entity that disturbed it.
      * <p>
@@ -182,50 +247,143 @@ public final class BlockHelper {
      *                    if there isn't really enough space for it.
      */
     public static void spawnHiddenMob( IWorld world, BlockPos pos, @Nullable PlayerEntity player, boolean forceUnhide ) {
-        if( !(world instanceof ServerWorld) ) return;
-        TileEntity tileEntity = world.getBlockEntity( pos );
-        if( tileEntity == null ) return;
+        // Most blocks never hold a hidden mob; skip fetching the tile entity for them
+        if( !(world instanceof ServerWorld) || !HiddenMobIndex.contains( world, pos ) ) return;
         ServerWorld serverWorld = (ServerWorld) world;
+        if( !forceUnhide && isSpotBlocked( serverWorld, pos ) ) return;
+        TileEntity tileEntity = world.getBlockEntity( pos );
+        if( tileEntity == null ) {
+            HiddenMobIndex.remove( world, pos );
+            return;
+        }
         
         // Get the tag if it exists
         CompoundNBT data = tileEntity.getTileData();
-        if( !NBTHelper.containsCompound( data, TAG_HIDDEN_MOB ) ) return;
+        if( !NBTHelper.containsCompound( data, TAG_HIDDEN_MOB ) ) {
+            HiddenMobIndex.remove( world, pos );
+            return;
+        }
         CompoundNBT mobTag = data.getCompound( TAG_HIDDEN_MOB );
         
         // Validate and load from tag
         if( mobTag.isEmpty() || !NBTHelper.containsString( mobTag, "id" ) ) return;
-        Optional<Entity> optional = EntityType.create( mobTag, serverWorld );
-        if( !optional.isPresent() ) return;
-        
-        // Load successful!
-        Entity mob = optional.get();;
+        Optional<EntityType<?>> type = EntityType.byString( mobTag.getString( "id" ) );
+        if( !type.isPresent() ) return;
         BlockPos spawnPos = pos.above();
-        mob.setPos( spawnPos.getX() + 0.5D, spawnPos.getY(), spawnPos.getZ() + 0.5D );
-
+        
         // If we are not forcefully spawning the mob, check if it
-        // has space to be placed above where it is hiding
-        if ( !forceUnhide ) {
-            // Check if the mob has space to unhide
-            if (!world.noCollision(mob.getType().getAABB(spawnPos.getX() + 0.5D, spawnPos.getY(), spawnPos.getZ() + 0.5D))) {
-                mob.remove();
-                return;
-            }
+        // has space to be placed above where it is hiding (before going to the trouble of loading it)
+        if( !forceUnhide && !world.noCollision( type.get().getAABB( spawnPos.getX() + 0.5D, spawnPos.getY(), spawnPos.getZ() + 0.5D ) ) ) {
+            markSpotBlocked( serverWorld, pos );
+            return;
         }
+        Entity mob = loadHiddenMob( serverWorld, pos, mobTag );
+        if( mob == null ) return;
+        
         // Remove the mob data from tile entity nbt
         data.remove( TAG_HIDDEN_MOB );
-
+        data.remove( TAG_HIDE_INFO );
+        HiddenMobIndex.remove( world, pos );
+        
         // Add the mob to the world and play effects
-        serverWorld.addWithUUID( mob );
-
+        addHiddenMob( serverWorld, mob, player );
+        sendUnhideParticles( serverWorld, pos, pos, 1 );
+    }
+    
+    /**
+     * Unhides all hiding mobs in a group of blocks at once, such as all blocks destroyed by an explosion. The mobs are
+     * forced to spawn, since the blocks are going away. Large groups are released over several ticks.
+     * <p>
+     * @param world     The world we live in. Absolutely mad.
+     * @param positions Positions to check for hidden mobs.
+     * @param player    The player triggering this check.
+     */
+    public static void spawnHiddenMobs( IWorld world, Iterable<BlockPos> positions, @Nullable PlayerEntity player ) {
+        if( !(world instanceof ServerWorld) ) return;
+        ServerWorld serverWorld = (ServerWorld) world;
+        
+        // Take all the hidden mobs out of their blocks now, before the blocks are destroyed
+        HiddenMobBatch batch = null;
+        for( BlockPos pos : positions ) {
+            if( !HiddenMobIndex.contains( world, pos ) ) continue;
+            CompoundNBT mobTag = takeHiddenMob( serverWorld, pos );
+            if( mobTag == null ) continue;
+            
+            if( batch == null ) batch = new HiddenMobBatch( serverWorld, player );
+            batch.add( pos, mobTag );
+        }
+        if( batch != null ) batch.start();
+    }
+    
+    /**
+     * Forces a hiding mob out of its block to make room for other hiding mobs. The mob is spawned even if there
+     * isn't really enough space for it, and does not target anyone.
+     * <p>
+     * @param world The world we live in. Absolutely mad.
+     * @param pos   Position of the hidden mob.
+     */
+    static void evictHiddenMob( ServerWorld world, BlockPos pos ) {
+        // Always removes the mob from the index, even if its data turns out to be unusable
+        CompoundNBT mobTag = takeHiddenMob( world, pos );
+        if( mobTag == null ) return;
+        Entity mob = loadHiddenMob( world, pos, mobTag );
+        if( mob == null ) return;
+        
+        addHiddenMob( world, mob, null );
+        sendUnhideParticles( world, pos, pos, 1 );
+    }
+    
+    /** @return Removes and returns the hidden mob data held by the block, or null if there is none. */
+    @Nullable
+    private static CompoundNBT takeHiddenMob( ServerWorld world, BlockPos pos ) {
+        HiddenMobIndex.remove( world, pos );
+        TileEntity tileEntity = world.getBlockEntity( pos );
+        if( tileEntity == null ) return null;
+        
+        CompoundNBT data = tileEntity.getTileData();
+        if( !NBTHelper.containsCompound( data, TAG_HIDDEN_MOB ) ) return null;
+        CompoundNBT mobTag = data.getCompound( TAG_HIDDEN_MOB );
+        data.remove( TAG_HIDDEN_MOB );
+        data.remove( TAG_HIDE_INFO );
+        
+        return mobTag.isEmpty() || !NBTHelper.containsString( mobTag, "id" ) ? null : mobTag;
+    }
+    
+    /** @return Creates a hidden mob from its saved data, placed on top of its hiding spot, or returns null if it could not be loaded. */
+    @Nullable
+    static Entity loadHiddenMob( ServerWorld world, BlockPos pos, CompoundNBT mobTag ) {
+        final CompoundNBT fullTag = HiddenMobCodec.expand( world, mobTag );
+        if( fullTag == null ) return null;
+        Optional<Entity> optional = EntityType.create( fullTag, world );
+        if( !optional.isPresent() ) return null;
+        
+        // Load successful!
+        Entity mob = optional.get();
+        BlockPos spawnPos = pos.above();
+        mob.setPos( spawnPos.getX() + 0.5D, spawnPos.getY(), spawnPos.getZ() + 0.5D );
+        return mob;
+    }
+    
+    /** Adds an unhidden mob to the world and targets the entity that disturbed it. */
+    static void addHiddenMob( ServerWorld world, Entity mob, @Nullable PlayerEntity player ) {
+        world.addWithUUID( mob );
+        
         if( mob instanceof MobEntity ) {
             if( player != null && !player.isSpectator() && player.isAlive() && ((MobEntity) mob).canAttack( player ) ) {
                 ((MobEntity) mob).setTarget( player );
             }
             ((MobEntity) mob).spawnAnim();
         }
+    }
+    
+    /** Plays the effects for mobs coming out of hiding spots within the given bounds, as a single particle packet. */
+    static void sendUnhideParticles( ServerWorld world, BlockPos min, BlockPos max, int mobCount ) {
         Random random = world.getRandom();
-        serverWorld.sendParticles( ParticleTypes.CLOUD,
-                pos.getX() + 0.5, pos.getY() + 0.5, pos.getZ() + 0.5, 10,
-                random.nextGaussian(), random.nextGaussian(), random.nextGaussian(), 0.1 );
+        world.sendParticles( ParticleTypes.CLOUD,
+                (min.getX() + max.getX()) * 0.5 + 0.5, (min.getY() + max.getY()) * 0.5 + 0.5, (min.getZ() + max.getZ()) * 0.5 + 0.5,
+                10 * mobCount,
+                (max.getX() - min.getX()) * 0.5 + random.nextGaussian(),
+                (max.getY() - min.getY()) * 0.5 + random.nextGaussian(),
+                (max.getZ() - min.getZ()) * 0.5 + random.nextGaussian(), 0.1 );
     }
 }
\ No newline at end of file
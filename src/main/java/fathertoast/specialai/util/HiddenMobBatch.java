@@ -0,0 +1,92 @@
+package fathertoast.specialai.util;
+
+import fathertoast.specialai.ai.AIManager;
+import fathertoast.specialai.ai.DeferredAction;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A group of hidden mobs that were all disturbed at once (for example, by one explosion) and are released together.
+ * <p>
+ * Each tick, up to a limited number of the mobs are created and added to the world, with a single particle effect
+ * covering all of them. Anything left over is released at the end of the following ticks, or all at once if the
+ * world shuts down first, since the mobs are no longer saved anywhere else.
+ */
+class HiddenMobBatch extends DeferredAction {
+    /** The maximum number of mobs released from a batch each tick. */
+    private static final int MAX_RELEASED_PER_TICK = 8;
+    
+    /** The world the mobs are hidden in. */
+    private final ServerWorld WORLD;
+    /** The player that disturbed the mobs, if any. */
+    @Nullable
+    private final PlayerEntity PLAYER;
+    /** The hiding spot of each mob in the batch. */
+    private final List<BlockPos> POSITIONS = new ArrayList<>();
+    /** The saved data of each mob in the batch. */
+    private final List<CompoundNBT> MOB_TAGS = new ArrayList<>();
+    
+    /** The index of the next mob to release. */
+    private int nextIndex;
+    
+    HiddenMobBatch( ServerWorld world, @Nullable PlayerEntity player ) {
+        // Every attempt releases more mobs, so batches always finish and need no attempt limit
+        super( Integer.MAX_VALUE );
+        WORLD = world;
+        PLAYER = player;
+    }
+    
+    /** Adds a mob taken out of its hiding spot to the batch. */
+    void add( BlockPos pos, CompoundNBT mobTag ) {
+        POSITIONS.add( pos.immutable() );
+        MOB_TAGS.add( mobTag );
+    }
+    
+    /** Releases the first mobs right away, and queues the rest to be released over the following ticks. */
+    void start() {
+        if( !run() ) AIManager.queue( WORLD, this );
+    }
+    
+    /** Called to release the next mobs in the batch. Returns true when all mobs have been released. */
+    @Override
+    protected boolean run() { return release( MAX_RELEASED_PER_TICK ); }
+    
+    /** Called when the world is shutting down to release all mobs left in the batch. */
+    @Override
+    protected boolean finish() { return release( POSITIONS.size() ); }
+    
+    /** Releases up to the given number of the next mobs in the batch. Returns true when all mobs have been released. */
+    private boolean release( int maxReleased ) {
+        final int end = Math.min( nextIndex + maxReleased, POSITIONS.size() );
+        
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        int released = 0;
+        for( ; nextIndex < end; nextIndex++ ) {
+            final BlockPos pos = POSITIONS.get( nextIndex );
+            final Entity mob = BlockHelper.loadHiddenMob( WORLD, pos, MOB_TAGS.get( nextIndex ) );
+            MOB_TAGS.set( nextIndex, null );
+            if( mob == null ) continue;
+            
+            BlockHelper.addHiddenMob( WORLD, mob, PLAYER );
+            released++;
+            minX = Math.min( minX, pos.getX() );
+            minY = Math.min( minY, pos.getY() );
+            minZ = Math.min( minZ, pos.getZ() );
+            maxX = Math.max( maxX, pos.getX() );
+            maxY = Math.max( maxY, pos.getY() );
+            maxZ = Math.max( maxZ, pos.getZ() );
+        }
+        if( released > 0 ) {
+            BlockHelper.sendUnhideParticles( WORLD, new BlockPos( minX, minY, minZ ), new BlockPos( maxX, maxY, maxZ ), released );
+        }
+        return nextIndex >= POSITIONS.size();
+    }
+}
\ No newline at end of file
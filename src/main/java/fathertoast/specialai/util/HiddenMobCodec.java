@@ -0,0 +1,225 @@
+package fathertoast.specialai.util;
+
+import fathertoast.crust.api.lib.NBTHelper;
+import fathertoast.specialai.SpecialAI;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.INBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.nbt.StringNBT;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.common.util.Constants;
+
+import javax.annotation.Nullable;
+import java.util.Optional;
+
+/**
+ * Converts the saved data of hidden mobs to and from a compact form that only stores how the mob differs from a
+ * freshly created entity of the same type.
+ * <p>
+ * The 'fresh entity' template for each entity type is created the first time that type is hidden and saved with the
+ * overworld right away, so hidden mobs always expand back using the exact template they were compacted against. If
+ * that template is missing or different (for example, the templates file was deleted or the chunk was copied from
+ * another world), the mob is not expanded, since applying its differences to another template would change the mob.
+ * Compact data is laid out as:
+ * <ul>
+ *     <li>"v" - the format version</li>
+ *     <li>"id" - the entity type id, as in normal entity data</li>
+ *     <li>"t" - the hash of the template (since version 2)</li>
+ *     <li>"d" - the differences from the template:
+ *     "+" holds added or changed tags, "-" lists removed tags, and "~" holds the differences for nested compounds</li>
+ * </ul>
+ * Data without a format version is in the original full form and is used as-is.
+ */
+public final class HiddenMobCodec {
+    /** The current format version. */
+    private static final int VERSION = 2;
+    
+    private static final String TAG_VERSION = "v";
+    private static final String TAG_ID = "id";
+    private static final String TAG_TEMPLATE = "t";
+    private static final String TAG_DIFF = "d";
+    private static final String TAG_CHANGED = "+";
+    private static final String TAG_REMOVED = "-";
+    private static final String TAG_NESTED = "~";
+    
+    /** @return Returns true if the hidden mob data is in compact form. */
+    public static boolean isCompact( CompoundNBT tag ) { return NBTHelper.containsNumber( tag, TAG_VERSION ); }
+    
+    /**
+     * @param world   The world the mob is hidden in.
+     * @param fullTag The mob's full save data, including its entity type id.
+     * @return Returns the mob's data in compact form, or the full data if it can't be compacted.
+     */
+    public static CompoundNBT compact( ServerWorld world, CompoundNBT fullTag ) {
+        final String id = fullTag.getString( TAG_ID );
+        final CompoundNBT template = Templates.get( world ).getOrCreate( world, id );
+        if( template == null ) return fullTag;
+        
+        final CompoundNBT data = fullTag.copy();
+        data.remove( TAG_ID );
+        
+        final CompoundNBT tag = new CompoundNBT();
+        tag.putInt( TAG_VERSION, VERSION );
+        tag.putString( TAG_ID, id );
+        tag.putInt( TAG_TEMPLATE, template.hashCode() );
+        tag.put( TAG_DIFF, diff( template, data ) );
+        return tag;
+    }
+    
+    /**
+     * @param world The world the mob is hidden in.
+     * @param tag   The hidden mob data, in either form.
+     * @return Returns the mob's full save data, or null if it could not be expanded.
+     */
+    @Nullable
+    public static CompoundNBT expand( ServerWorld world, CompoundNBT tag ) {
+        if( !isCompact( tag ) ) return tag;
+        
+        // Never build a new template here; the differences only make sense against the one they were made from
+        final String id = tag.getString( TAG_ID );
+        final CompoundNBT template = Templates.get( world ).find( id );
+        if( template == null ) {
+            SpecialAI.LOG.error( "Missing hidden mob template for '{}'; cannot restore hidden mob: {}", id, tag );
+            return null;
+        }
+        if( NBTHelper.containsNumber( tag, TAG_TEMPLATE ) && tag.getInt( TAG_TEMPLATE ) != template.hashCode() ) {
+            SpecialAI.LOG.error( "Hidden mob template for '{}' does not match the one the mob was saved with; " +
+                    "cannot restore hidden mob: {}", id, tag );
+            return null;
+        }
+        
+        final CompoundNBT fullTag = template.copy();
+        applyDiff( fullTag, tag.getCompound( TAG_DIFF ) );
+        fullTag.putString( TAG_ID, id );
+        return fullTag;
+    }
+    
+    /**
+     * Converts any hidden mobs in the original full form to compact form, directly in a chunk's saved data.
+     *
+     * @param world     The world the chunk belongs to.
+     * @param levelData The "Level" tag of the chunk data.
+     * @param positions The positions in the chunk known to hold a hidden mob.
+     */
+    static void compactSavedTileEntities( ServerWorld world, CompoundNBT levelData, LongSet positions ) {
+        final ListNBT tileEntities = levelData.getList( "TileEntities", Constants.NBT.TAG_COMPOUND );
+        for( int i = 0; i < tileEntities.size(); i++ ) {
+            final CompoundNBT tileEntity = tileEntities.getCompound( i );
+            if( !positions.contains( BlockPos.asLong( tileEntity.getInt( "x" ), tileEntity.getInt( "y" ), tileEntity.getInt( "z" ) ) ) ) {
+                continue;
+            }
+            final CompoundNBT forgeData = tileEntity.getCompound( "ForgeData" );
+            final CompoundNBT mobTag = forgeData.getCompound( BlockHelper.TAG_HIDDEN_MOB );
+            if( !isCompact( mobTag ) && NBTHelper.containsString( mobTag, TAG_ID ) ) {
+                forgeData.put( BlockHelper.TAG_HIDDEN_MOB, compact( world, mobTag ) );
+            }
+        }
+    }
+    
+    /** @return Returns the differences needed to turn the template into the data. */
+    private static CompoundNBT diff( CompoundNBT template, CompoundNBT data ) {
+        final CompoundNBT changed = new CompoundNBT();
+        final ListNBT removed = new ListNBT();
+        final CompoundNBT nested = new CompoundNBT();
+        
+        for( String key : template.getAllKeys() ) {
+            if( !data.contains( key ) ) removed.add( StringNBT.valueOf( key ) );
+        }
+        for( String key : data.getAllKeys() ) {
+            final INBT value = data.get( key );
+            final INBT templateValue = template.get( key );
+            if( value == null || value.equals( templateValue ) ) continue;
+            
+            if( value instanceof CompoundNBT && templateValue instanceof CompoundNBT ) {
+                nested.put( key, diff( (CompoundNBT) templateValue, (CompoundNBT) value ) );
+            }
+            else {
+                changed.put( key, value.copy() );
+            }
+        }
+        
+        final CompoundNBT tag = new CompoundNBT();
+        if( !changed.isEmpty() ) tag.put( TAG_CHANGED, changed );
+        if( !removed.isEmpty() ) tag.put( TAG_REMOVED, removed );
+        if( !nested.isEmpty() ) tag.put( TAG_NESTED, nested );
+        return tag;
+    }
+    
+    /** Applies differences made by {@link #diff(CompoundNBT, CompoundNBT)} to a copy of the template. */
+    private static void applyDiff( CompoundNBT target, CompoundNBT diff ) {
+        final ListNBT removed = diff.getList( TAG_REMOVED, Constants.NBT.TAG_STRING );
+        for( int i = 0; i < removed.size(); i++ ) {
+            target.remove( removed.getString( i ) );
+        }
+        final CompoundNBT changed = diff.getCompound( TAG_CHANGED );
+        for( String key : changed.getAllKeys() ) {
+            final INBT value = changed.get( key );
+            if( value != null ) target.put( key, value.copy() );
+        }
+        final CompoundNBT nested = diff.getCompound( TAG_NESTED );
+        for( String key : nested.getAllKeys() ) {
+            final CompoundNBT nestedTarget = target.getCompound( key );
+            applyDiff( nestedTarget, nested.getCompound( key ) );
+            target.put( key, nestedTarget );
+        }
+    }
+    
+    /** The 'fresh entity' templates for each entity type that has been hidden. Saved with the overworld. */
+    private static class Templates extends WorldSavedData {
+        /** The name of the saved data file. */
+        static final String NAME = SpecialAI.MOD_ID + "_hidden_mob_templates";
+        
+        /** @return Returns the templates for the server the world belongs to. */
+        static Templates get( ServerWorld world ) {
+            return world.getServer().overworld().getDataStorage().computeIfAbsent( Templates::new, NAME );
+        }
+        
+        /** The template for each entity type, by entity type id. */
+        private CompoundNBT templates = new CompoundNBT();
+        
+        Templates() { super( NAME ); }
+        
+        /** @return Returns the template for the entity type, or null if there is none. */
+        @Nullable
+        CompoundNBT find( String id ) { return NBTHelper.containsCompound( templates, id ) ? templates.getCompound( id ) : null; }
+        
+        /** @return Returns the template for the entity type, creating it if needed, or null if the type is invalid. */
+        @Nullable
+        CompoundNBT getOrCreate( ServerWorld world, String id ) {
+            final CompoundNBT existing = find( id );
+            if( existing != null ) return existing;
+            
+            final Optional<EntityType<?>> type = EntityType.byString( id );
+            if( !type.isPresent() ) return null;
+            final Entity entity = type.get().create( world );
+            if( entity == null ) return null;
+            
+            // The UUID is random for each entity, so it will always be stored with the differences anyway
+            final CompoundNBT template = entity.saveWithoutId( new CompoundNBT() );
+            template.remove( "UUID" );
+            entity.remove();
+            
+            templates.put( id, template );
+            setDirty();
+            // Save now, before any chunk can be saved with data that depends on this template
+            world.getServer().overworld().getDataStorage().save();
+            return template;
+        }
+        
+        /** Loads the templates from the saved data file. */
+        @Override
+        public void load( CompoundNBT tag ) { templates = tag.getCompound( "templates" ); }
+        
+        /** Writes the templates to the saved data file. */
+        @Override
+        public CompoundNBT save( CompoundNBT tag ) {
+            tag.put( "templates", templates );
+            return tag;
+        }
+    }
+}
\ No newline at end of file
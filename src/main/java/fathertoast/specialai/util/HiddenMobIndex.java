@@ -0,0 +1,309 @@
+package fathertoast.specialai.util;
+
+import fathertoast.crust.api.lib.NBTHelper;
+import fathertoast.specialai.SpecialAI;
+import fathertoast.specialai.config.Config;
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.ListNBT;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.IWorld;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkStatus;
+import net.minecraft.world.chunk.IChunk;
+import net.minecraft.world.server.ServerWorld;
+import net.minecraft.world.storage.WorldSavedData;
+import net.minecraftforge.common.util.Constants;
+import net.minecraftforge.event.world.ChunkDataEvent;
+import net.minecraftforge.event.world.ChunkEvent;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Keeps track of the positions of all blocks holding a hidden mob in each loaded chunk, so that checking a block for
+ * a hidden mob is usually just a set lookup instead of fetching the block's tile entity and its data.
+ * <p>
+ * The positions are saved with the chunk and read back when it loads. Chunks saved before this index existed are
+ * indexed from their saved tile entity data the first time they load. The tile entity data is still the source of
+ * truth; a position found to no longer hold a hidden mob is simply dropped from the index.
+ * <p>
+ * Each position also keeps its 'hiding info' (when the mob hid and whether it could despawn), which is used to pick
+ * a mob to force out when the configured per-chunk or per-dimension limit is reached. The total number of hidden mobs
+ * in each dimension, including those in unloaded chunks, is saved with the dimension.
+ */
+public final class HiddenMobIndex {
+    /** The chunk data tag the positions are saved under. */
+    private static final String TAG_INDEX = SpecialAI.MOD_ID + "_hidden_mobs";
+    /** The chunk data tag the hiding info is saved under, in the same order as the positions. */
+    private static final String TAG_INDEX_INFO = SpecialAI.MOD_ID + "_hidden_mobs_info";
+    
+    /** The maximum number of mobs forced out of hiding to make room for a single new one. */
+    private static final int MAX_EVICTIONS = 4;
+    /** Returned when no hidden mob could be picked to force out. */
+    private static final long NO_VICTIM = Long.MIN_VALUE;
+    
+    /** The hidden mob index for each world. */
+    private static final PerWorld<WorldIndex> INDEX = new PerWorld<>( WorldIndex::new );
+    
+    /** @return Returns true if the index says the block at the position holds a hidden mob. */
+    public static boolean contains( IWorld world, BlockPos pos ) {
+        final WorldIndex index = INDEX.getIfPresent( world );
+        if( index == null ) return false;
+        final Long2LongMap positions = index.CHUNKS.get( getChunkKey( pos ) );
+        return positions != null && positions.containsKey( pos.asLong() );
+    }
+    
+    /** @return Returns the number of mobs hidden in the world, including those in chunks that are not loaded. */
+    public static int getCount( ServerWorld world ) { return INDEX.get( world ).COUNT.count; }
+    
+    /** @return Returns the hiding info for a mob, packed into a single number for storage. */
+    static long packInfo( long hideTime, boolean despawnable ) { return hideTime << 1 | (despawnable ? 1L : 0L); }
+    
+    /** @return Returns the game time the mob hid at from its packed hiding info. */
+    private static long getHideTime( long info ) { return info >> 1; }
+    
+    /** @return Returns true if the mob would normally despawn from its packed hiding info. */
+    private static boolean isDespawnable( long info ) { return (info & 1L) != 0L; }
+    
+    /** Records that the block at the position now holds a hidden mob. */
+    static void add( IWorld world, BlockPos pos, long info ) {
+        if( !(world instanceof ServerWorld) ) return;
+        final WorldIndex index = INDEX.get( (ServerWorld) world );
+        final long chunkKey = getChunkKey( pos );
+        Long2LongMap positions = index.CHUNKS.get( chunkKey );
+        if( positions == null ) {
+            positions = new Long2LongOpenHashMap();
+            index.CHUNKS.put( chunkKey, positions );
+        }
+        if( !positions.containsKey( pos.asLong() ) ) index.COUNT.add( 1 );
+        positions.put( pos.asLong(), info );
+    }
+    
+    /** Records that the block at the position no longer holds a hidden mob. */
+    static void remove( IWorld world, BlockPos pos ) {
+        final WorldIndex index = INDEX.getIfPresent( world );
+        if( index == null ) return;
+        final long chunkKey = getChunkKey( pos );
+        final Long2LongMap positions = index.CHUNKS.get( chunkKey );
+        if( positions == null || !positions.containsKey( pos.asLong() ) ) return;
+        
+        positions.remove( pos.asLong() );
+        if( positions.isEmpty() ) index.CHUNKS.remove( chunkKey );
+        index.COUNT.add( -1 );
+    }
+    
+    /**
+     * Forces hidden mobs out of hiding, if needed, so that another mob can hide at the position without going over
+     * the configured limits.
+     *
+     * @param world The world the new mob will hide in.
+     * @param pos   The position the new mob will hide at.
+     * @return True if there is room for the new mob.
+     */
+    static boolean makeRoom( ServerWorld world, BlockPos pos ) {
+        final int chunkLimit = Config.IDLE.HIDING.maxPerChunk.get();
+        final int worldLimit = Config.IDLE.HIDING.maxPerDimension.get();
+        final EvictionPolicy policy = Config.IDLE.HIDING.evictionPolicy.get();
+        final WorldIndex index = INDEX.get( world );
+        final long chunkKey = getChunkKey( pos );
+        
+        for( int evicted = 0; evicted <= MAX_EVICTIONS; evicted++ ) {
+            final Long2LongMap chunkPositions = index.CHUNKS.get( chunkKey );
+            final boolean chunkFull = chunkLimit > 0 && chunkPositions != null && chunkPositions.size() >= chunkLimit;
+            final boolean worldFull = worldLimit > 0 && index.COUNT.count >= worldLimit;
+            if( !chunkFull && !worldFull ) return true;
+            if( evicted == MAX_EVICTIONS ) break;
+            
+            // Forcing out a mob from the same chunk makes room under both limits at once; otherwise any loaded mob will do
+            final long victim = pickVictim( policy, chunkFull ? Collections.singletonList( chunkPositions ) : index.CHUNKS.values() );
+            if( victim == NO_VICTIM ) break;
+            BlockHelper.evictHiddenMob( world, BlockPos.of( victim ) );
+        }
+        return false;
+    }
+    
+    /** @return Returns the position of the hidden mob in the chunks that should be forced out first, or NO_VICTIM if there are none. */
+    private static long pickVictim( EvictionPolicy policy, Collection<Long2LongMap> chunks ) {
+        long victim = NO_VICTIM;
+        long victimInfo = 0L;
+        for( Long2LongMap positions : chunks ) {
+            for( Long2LongMap.Entry entry : positions.long2LongEntrySet() ) {
+                if( victim == NO_VICTIM || policy.isBetterVictim( entry.getLongValue(), victimInfo ) ) {
+                    victim = entry.getLongKey();
+                    victimInfo = entry.getLongValue();
+                }
+            }
+        }
+        return victim;
+    }
+    
+    /** Called when a chunk's data is read from disk to load the index for that chunk. */
+    public static void onChunkDataLoad( ChunkDataEvent.Load event ) {
+        // Only full chunks can hold hidden mobs
+        if( !(event.getWorld() instanceof ServerWorld) || event.getStatus() != ChunkStatus.Type.LEVELCHUNK ) return;
+        
+        final CompoundNBT data = event.getData();
+        final long[] saved;
+        if( data.contains( TAG_INDEX, Constants.NBT.TAG_LONG_ARRAY ) ) {
+            saved = data.getLongArray( TAG_INDEX );
+        }
+        else {
+            // Chunk was saved before the index existed; find the positions in the saved tile entities instead
+            saved = findSavedHiddenMobs( data.getCompound( "Level" ) );
+        }
+        final long[] savedInfo = data.getLongArray( TAG_INDEX_INFO );
+        if( saved.length > 0 ) {
+            final WorldIndex index = INDEX.get( (ServerWorld) event.getWorld() );
+            final Long2LongMap positions = new Long2LongOpenHashMap( saved.length );
+            for( int i = 0; i < saved.length; i++ ) {
+                // Mobs hidden before the info was saved are treated as the oldest, and as not despawnable
+                positions.put( saved[i], i < savedInfo.length ? savedInfo[i] : 0L );
+            }
+            index.CHUNKS.put( event.getChunk().getPos().toLong(), positions );
+            
+            // Chunks saved without the info were also never counted towards the dimension's total
+            if( !data.contains( TAG_INDEX_INFO, Constants.NBT.TAG_LONG_ARRAY ) ) index.COUNT.add( positions.size() );
+            
+            // Convert any hidden mobs saved in the original full form before their tile entities are loaded
+            HiddenMobCodec.compactSavedTileEntities( (ServerWorld) event.getWorld(), data.getCompound( "Level" ), positions.keySet() );
+        }
+    }
+    
+    /** Called when a chunk's data is written to disk to save the index for that chunk. */
+    public static void onChunkDataSave( ChunkDataEvent.Save event ) {
+        final IChunk chunk = event.getChunk();
+        if( !(chunk instanceof Chunk) ) return;
+        
+        final WorldIndex index = INDEX.getIfPresent( event.getWorld() );
+        if( index != null ) dropMissing( index, (Chunk) chunk );
+        
+        // Build from the tile entities themselves, so this does not depend on the index still being loaded
+        final LongList positions = new LongArrayList();
+        final LongList info = new LongArrayList();
+        for( TileEntity tileEntity : ((Chunk) chunk).getBlockEntities().values() ) {
+            final CompoundNBT tileData = tileEntity.getTileData();
+            if( NBTHelper.containsCompound( tileData, BlockHelper.TAG_HIDDEN_MOB ) ) {
+                positions.add( tileEntity.getBlockPos().asLong() );
+                info.add( tileData.getLong( BlockHelper.TAG_HIDE_INFO ) );
+            }
+        }
+        event.getData().putLongArray( TAG_INDEX, positions.toLongArray() );
+        event.getData().putLongArray( TAG_INDEX_INFO, info.toLongArray() );
+    }
+    
+    /** Called when a chunk unloads to drop the index for that chunk. Its remaining mobs still count towards the dimension's total. */
+    public static void onChunkUnload( ChunkEvent.Unload event ) {
+        final WorldIndex index = INDEX.getIfPresent( event.getWorld() );
+        if( index == null ) return;
+        if( event.getChunk() instanceof Chunk ) dropMissing( index, (Chunk) event.getChunk() );
+        index.CHUNKS.remove( event.getChunk().getPos().toLong() );
+    }
+    
+    /**
+     * Drops the chunk's indexed positions that no longer hold a hidden mob and takes them off the dimension's total.
+     * This catches blocks that were replaced without the mob coming out, such as by commands or other mods.
+     */
+    private static void dropMissing( WorldIndex index, Chunk chunk ) {
+        final long chunkKey = chunk.getPos().toLong();
+        final Long2LongMap positions = index.CHUNKS.get( chunkKey );
+        if( positions == null ) return;
+        
+        final LongIterator iterator = positions.keySet().iterator();
+        while( iterator.hasNext() ) {
+            if( !holdsHiddenMob( chunk, BlockPos.of( iterator.nextLong() ) ) ) {
+                iterator.remove();
+                index.COUNT.add( -1 );
+            }
+        }
+        if( positions.isEmpty() ) index.CHUNKS.remove( chunkKey );
+    }
+    
+    /** @return Returns true if the chunk's tile entity at the position holds a hidden mob. */
+    private static boolean holdsHiddenMob( Chunk chunk, BlockPos pos ) {
+        final TileEntity tileEntity = chunk.getBlockEntities().get( pos );
+        if( tileEntity != null ) return NBTHelper.containsCompound( tileEntity.getTileData(), BlockHelper.TAG_HIDDEN_MOB );
+        
+        // The tile entity may not have been created from its saved data yet
+        final CompoundNBT pending = chunk.getBlockEntityNbt( pos );
+        return pending != null && NBTHelper.containsCompound( pending.getCompound( "ForgeData" ), BlockHelper.TAG_HIDDEN_MOB );
+    }
+    
+    /** @return Returns the positions of all saved tile entities in the chunk level data that hold a hidden mob. */
+    private static long[] findSavedHiddenMobs( CompoundNBT levelData ) {
+        final LongSet positions = new LongOpenHashSet();
+        final ListNBT tileEntities = levelData.getList( "TileEntities", Constants.NBT.TAG_COMPOUND );
+        for( int i = 0; i < tileEntities.size(); i++ ) {
+            final CompoundNBT tileEntity = tileEntities.getCompound( i );
+            if( NBTHelper.containsCompound( tileEntity.getCompound( "ForgeData" ), BlockHelper.TAG_HIDDEN_MOB ) ) {
+                positions.add( BlockPos.asLong( tileEntity.getInt( "x" ), tileEntity.getInt( "y" ), tileEntity.getInt( "z" ) ) );
+            }
+        }
+        return positions.toLongArray();
+    }
+    
+    /** @return Returns the key of the chunk containing the position. */
+    private static long getChunkKey( BlockPos pos ) { return ChunkPos.asLong( pos.getX() >> 4, pos.getZ() >> 4 ); }
+    
+    /** Allows the user to choose which hidden mob is forced out when a limit is reached through the config file. */
+    @SuppressWarnings( "unused" )
+    public enum EvictionPolicy {
+        OLDEST_FIRST,
+        DESPAWNABLE_FIRST;
+        
+        /** @return Returns true if the first hidden mob should be forced out before the second, from their packed hiding info. */
+        boolean isBetterVictim( long info, long otherInfo ) {
+            if( this == DESPAWNABLE_FIRST && isDespawnable( info ) != isDespawnable( otherInfo ) ) return isDespawnable( info );
+            return getHideTime( info ) < getHideTime( otherInfo );
+        }
+    }
+    
+    /** The hidden mob index for a single world. */
+    private static class WorldIndex {
+        /** The hiding info for each position holding a hidden mob, by loaded chunk. Chunks with none may have no entry. */
+        final Long2ObjectMap<Long2LongMap> CHUNKS = new Long2ObjectOpenHashMap<>();
+        /** The number of mobs hidden in the world. */
+        final Count COUNT;
+        
+        WorldIndex( ServerWorld world ) { COUNT = world.getDataStorage().computeIfAbsent( Count::new, Count.NAME ); }
+    }
+    
+    /** The number of mobs hidden in a dimension, including those in chunks that are not loaded. Saved with the dimension. */
+    private static class Count extends WorldSavedData {
+        /** The name of the saved data file. */
+        static final String NAME = SpecialAI.MOD_ID + "_hidden_mob_count";
+        
+        /** The number of hidden mobs. */
+        int count;
+        
+        Count() { super( NAME ); }
+        
+        /** Changes the number of hidden mobs. */
+        void add( int amount ) {
+            // Never go negative, in case chunks were deleted or edited outside the game
+            count = Math.max( 0, count + amount );
+            setDirty();
+        }
+        
+        /** Loads the count from the saved data file. */
+        @Override
+        public void load( CompoundNBT tag ) { count = tag.getInt( "count" ); }
+        
+        /** Writes the count to the saved data file. */
+        @Override
+        public CompoundNBT save( CompoundNBT tag ) {
+            tag.putInt( "count", count );
+            return tag;
+        }
+    }
+}
\ No newline at end of file
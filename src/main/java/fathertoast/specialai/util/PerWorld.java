@@ -0,0 +1,61 @@
+package fathertoast.specialai.util;
+
+import net.minecraft.world.IWorld;
+import net.minecraft.world.server.ServerWorld;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Holds one instance of some server-side state for each loaded world.
+ * <p>
+ * Instances are created lazily on first access and are discarded for every per-world storage at once
+ * when their world unloads (see {@link #unload(IWorld)}).
+ *
+ * @param <T> The type of state stored for each world.
+ */
+public final class PerWorld<T> {
+    /** Every per-world storage created, so that they can all be cleaned up together. */
+    private static final List<PerWorld<?>> ALL_STORAGE = new ArrayList<>();
+    
+    /** Discards the state held for the world in every per-world storage. Called when the world unloads. */
+    public static void unload( IWorld world ) {
+        for( PerWorld<?> storage : ALL_STORAGE ) {
+            storage.BY_WORLD.remove( world );
+        }
+    }
+    
+    /** The state held for each world. Weak keys are just a safety net; worlds are normally removed on unload. */
+    private final Map<ServerWorld, T> BY_WORLD = new WeakHashMap<>();
+    /** Creates the state for a world the first time it is needed. */
+    private final Function<ServerWorld, T> FACTORY;
+    
+    /**
+     * @param factory Creates the state for a world the first time it is needed.
+     */
+    public PerWorld( Function<ServerWorld, T> factory ) {
+        FACTORY = factory;
+        ALL_STORAGE.add( this );
+    }
+    
+    /** @return Returns the state for the world, creating it if needed. */
+    public T get( ServerWorld world ) { return BY_WORLD.computeIfAbsent( world, FACTORY ); }
+    
+    /** @return Returns the state for the world, or null if none has been created for it. */
+    @Nullable
+    public T getIfPresent( IWorld world ) {
+        //noinspection SuspiciousMethodCalls
+        return BY_WORLD.get( world );
+    }
+    
+    /** Discards the state held for every world. */
+    public void clear() { BY_WORLD.clear(); }
+    
+    /** Performs an action for each world that currently has state and that state. */
+    public void forEach( BiConsumer<ServerWorld, T> action ) { BY_WORLD.forEach( action ); }
+}
\ No newline at end of file
@@ -16,13 +16,16 @@ import net.minecraft.util.DamageSource;
 import net.minecraft.util.FoodStats;
 import net.minecraft.util.Hand;
 import net.minecraft.util.HandSide;
+import net.minecraft.util.math.vector.Vector3d;
 import net.minecraft.world.server.ServerWorld;
 import net.minecraftforge.common.util.FakePlayer;
 import net.minecraftforge.common.util.ITeleporter;
 
 import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
 
@@ -32,20 +35,51 @@ public class SpecialAIFakePlayer extends FakePlayer {
     /** The fake profile used for all fake players used by this mod. */
     private static final GameProfile FAKE_PLAYER_PROFILE = new GameProfile( null, "[SpecialAIFakePlayer]" );
     
-    /** The entity posing as this fake player. */
-    private final MobEntity wrappedEntity;
+    /** The unused fake players in each world, ready to wrap an entity. */
+    private static final PerWorld<List<SpecialAIFakePlayer>> POOL = new PerWorld<>( world -> new ArrayList<>() );
     
     /**
-     * @param entity The entity to wrap inside a fake player.
+     * Takes a fake player from the world's pool (or creates one if none are free) and wraps the entity inside it.
+     * Call {@link #release(SpecialAIFakePlayer)} as soon as the fake player is no longer needed.
+     *
+     * @param entity The entity to wrap inside a fake player. Must be in a server world.
+     * @return The fake player, now posing as the entity.
      */
-    public SpecialAIFakePlayer( MobEntity entity ) {
-        super( (ServerWorld) entity.level, FAKE_PLAYER_PROFILE );
-        wrappedEntity = entity;
+    public static SpecialAIFakePlayer acquire( MobEntity entity ) {
+        final List<SpecialAIFakePlayer> pool = POOL.get( (ServerWorld) entity.level );
+        final SpecialAIFakePlayer fakePlayer = pool.isEmpty() ? new SpecialAIFakePlayer( (ServerWorld) entity.level ) :
+                pool.remove( pool.size() - 1 );
+        fakePlayer.wrappedEntity = entity;
+        return fakePlayer;
+    }
+    
+    /** Unwraps the fake player's entity and returns the fake player to its world's pool. */
+    public static void release( SpecialAIFakePlayer fakePlayer ) {
+        fakePlayer.wrappedEntity = null;
+        // Don't carry anything opened or picked up during one interaction over to the next
+        if( fakePlayer.containerMenu != fakePlayer.inventoryMenu ) fakePlayer.doCloseContainer();
+        fakePlayer.inventory.clearContent();
+        fakePlayer.setDeltaMovement( Vector3d.ZERO );
+        
+        final List<SpecialAIFakePlayer> pool = POOL.getIfPresent( fakePlayer.getLevel() );
+        if( pool != null ) pool.add( fakePlayer );
+    }
+    
+    /** The entity posing as this fake player, or null while in the pool. */
+    @Nullable
+    private MobEntity wrappedEntity;
+    
+    /**
+     * @param world The world to create the fake player in. It must be given an entity to wrap before it is used.
+     */
+    private SpecialAIFakePlayer( ServerWorld world ) {
+        super( world, FAKE_PLAYER_PROFILE );
         foodData = new FakeFoodStats( this );
     }
     
     /** Call this method before using the fake player reference. */
     public void updateFakePlayerState() {
+        if( wrappedEntity == null ) return;
         absMoveTo( wrappedEntity.getX(), wrappedEntity.getY(), wrappedEntity.getZ(),
                 wrappedEntity.yRot, wrappedEntity.xRot );
         setDeltaMovement( wrappedEntity.getDeltaMovement() );
@@ -53,15 +87,12 @@ public class SpecialAIFakePlayer extends FakePlayer {
     
     /** Call this method after using the fake player reference. */
     public void updateWrappedEntityState() {
+        if( wrappedEntity == null ) return;
         wrappedEntity.absMoveTo( getX(), getY(), getZ(), yRot, xRot );
         wrappedEntity.setDeltaMovement( getDeltaMovement() );
     }
     
-    /**
-     * The fake player's equally fake food stats. Converts hunger gain to health gain for the wrapped entity.
-     * <p>
-     * Note that the wrapped entity will never be null at the time this is created.
-     */
+    /** The fake player's equally fake food stats. Converts hunger gain to health gain for the wrapped entity. */
     private static class FakeFoodStats extends FoodStats {
         /** The fake player this food stats belong to. */
         final SpecialAIFakePlayer fakePlayer;
@@ -69,7 +100,9 @@ public class SpecialAIFakePlayer extends FakePlayer {
         FakeFoodStats( SpecialAIFakePlayer player ) { fakePlayer = player; }
         
         @Override
-        public void eat( int food, float saturationModifier ) { fakePlayer.wrappedEntity.heal( Math.max( food, 1.0F ) ); }
+        public void eat( int food, float saturationModifier ) {
+            if( fakePlayer.wrappedEntity != null ) { fakePlayer.wrappedEntity.heal( Math.max( food, 1.0F ) ); }
+        }
         
         @Override
         public int getFoodLevel() { return 10; }